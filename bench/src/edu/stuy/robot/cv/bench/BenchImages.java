@@ -0,0 +1,76 @@
+package edu.stuy.robot.cv.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.core.Mat;
+
+import edu.stuy.robot.cv.capture.CaptureSource;
+import edu.stuy.robot.cv.capture.ImageCaptureSource;
+import edu.stuy.robot.cv.capture.ReplayCaptureSource;
+
+/**
+ * The recorded goal images the benchmarks run on: every <code>.png</code> and
+ * <code>.jpg</code> in a directory, read through
+ * <code>ImageCaptureSource</code> like the GUI does, or the frames of a
+ * recording made on the robot, read through <code>ReplayCaptureSource</code>.
+ */
+class BenchImages {
+
+    // Frames of a recording to keep in memory, at most. A whole match would
+    // take gigabytes.
+    private static final int MAX_RECORDED_FRAMES = 600;
+
+    /**
+     * @return One <code>ImageCaptureSource</code> per image in
+     * <code>dir</code>, in name order
+     */
+    static List<CaptureSource> sources(String dir) {
+        File[] files = new File(dir).listFiles((d, name) -> {
+            String lower = name.toLowerCase();
+            return lower.endsWith(".png") || lower.endsWith(".jpg");
+        });
+        if (files == null || files.length == 0) {
+            throw new IllegalStateException("No .png or .jpg images in " + new File(dir).getAbsolutePath());
+        }
+        Arrays.sort(files);
+        List<CaptureSource> sources = new ArrayList<CaptureSource>();
+        for (File file : files) {
+            sources.add(new ImageCaptureSource(file.getPath()));
+        }
+        return sources;
+    }
+
+    /**
+     * @return Every image in <code>dir</code>, resized as the robot's camera
+     * frames are
+     */
+    static List<Mat> frames(String dir) {
+        List<Mat> frames = new ArrayList<Mat>();
+        for (CaptureSource source : sources(dir)) {
+            frames.add(source.readSized());
+        }
+        return frames;
+    }
+
+    /**
+     * @param basePath
+     * The <code>basePath</code> the recording was made with
+     * @return The first <code>MAX_RECORDED_FRAMES</code> frames of the
+     * recording, in order, resized as the robot's camera frames are
+     */
+    static List<Mat> recordedFrames(String basePath) {
+        ReplayCaptureSource source = new ReplayCaptureSource(basePath, false);
+        List<Mat> frames = new ArrayList<Mat>();
+        Mat frame;
+        while (frames.size() < MAX_RECORDED_FRAMES && (frame = source.readSized()) != null) {
+            frames.add(frame);
+        }
+        if (frames.isEmpty()) {
+            throw new IllegalStateException("No frames in the recording at " + basePath);
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,140 @@
+package edu.stuy.robot.cv.bench;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.stuy.robot.cv.StuyVision;
+import edu.stuy.robot.cv.capture.CaptureSource;
+import edu.stuy.robot.cv.capture.ReplayCaptureSource;
+
+/**
+ * The stages of <code>StuyVision</code>'s pipeline, run on each of the
+ * images in <code>imageDir</code> in turn, or on the frames of
+ * <code>recording</code> if it is set. One operation is one frame.
+ *
+ * Allocation rates reported by the GC profiler only count the Java heap, not
+ * memory OpenCV allocates natively for <code>Mat</code>s.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param("images")
+    public String imageDir;
+
+    // Base path of a recording made on the robot to run on instead of the
+    // images, e.g. footage of a match
+    @Param("")
+    public String recording;
+
+    // Tracking only makes sense on consecutive frames, such as those of a
+    // recording, not a slideshow of unrelated images, so it is off by default
+    @Param("false")
+    public boolean tracking;
+
+    @Param({ "false", "true" })
+    public boolean pyramidSearch;
+
+    // Threshold, erode and dilate in Java rather than with OpenCV
+    @Param({ "false", "true" })
+    public boolean javaFilter;
+
+    // Label blobs in one pass rather than finding contours
+    @Param({ "false", "true" })
+    public boolean blobExtractor;
+
+    private StuyVision vision;
+    private List<Mat> frames;
+    private Mat[] masks;
+    private List<CaptureSource> sources;
+    private int next;
+
+    // Reused, as the robot's frame grabber does
+    private final Mat rawFrame = new Mat();
+    private final Mat resizedFrame = new Mat();
+    private final Mat workMask = new Mat();
+
+    @Setup
+    public void setup() {
+        vision = new StuyVision(false);
+        vision.useTracking.setValue(tracking);
+        vision.usePyramidSearch.setValue(pyramidSearch);
+        vision.useJavaFilter.setValue(javaFilter);
+        vision.useBlobExtractor.setValue(blobExtractor);
+        if (recording.isEmpty()) {
+            sources = BenchImages.sources(imageDir);
+            frames = BenchImages.frames(imageDir);
+        } else {
+            sources = Collections.<CaptureSource> singletonList(new ReplayCaptureSource(recording, false));
+            frames = BenchImages.recordedFrames(recording);
+        }
+        masks = new Mat[frames.size()];
+        for (int i = 0; i < masks.length; i++) {
+            masks[i] = new Mat();
+            vision.filterGoalColor(frames.get(i), masks[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        // Each trial in the fork makes a new StuyVision, whose filter threads
+        // would otherwise outlive it
+        vision.close();
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next = (next + 1) % frames.size();
+        return i;
+    }
+
+    @Benchmark
+    public void hsvThresholding(Blackhole bh) {
+        bh.consume(vision.hsvThresholding(frames.get(nextIndex())));
+    }
+
+    @Benchmark
+    public void filterGoalColor() {
+        vision.filterGoalColor(frames.get(nextIndex()), workMask);
+    }
+
+    @Benchmark
+    public void getLargestGoal(Blackhole bh) {
+        int i = nextIndex();
+        // Contour finding modifies its input, so work on a copy of the mask
+        masks[i].copyTo(workMask);
+        bh.consume(vision.getLargestGoal(frames.get(i), workMask));
+    }
+
+    @Benchmark
+    public void readSized(Blackhole bh) {
+        CaptureSource source = sources.get(nextIndex() % sources.size());
+        Mat frame = source.readSized(rawFrame, resizedFrame);
+        if (frame == null) {
+            // End of the recording: play it again from the start
+            source.reinitializeCaptureSource();
+            frame = source.readSized(rawFrame, resizedFrame);
+        }
+        bh.consume(frame);
+    }
+}
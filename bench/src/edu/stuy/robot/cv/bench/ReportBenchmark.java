@@ -0,0 +1,66 @@
+package edu.stuy.robot.cv.bench;
+
+import static edu.stuy.robot.RobotMap.CAMERA_FRAME_PX_HEIGHT;
+import static edu.stuy.robot.RobotMap.CAMERA_FRAME_PX_WIDTH;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.stuy.robot.cv.StuyVision;
+
+/**
+ * The math that turns a reading into angles and distances, on readings spread
+ * over the whole frame. Needs no images.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportBenchmark {
+
+    private static final int READINGS = 64;
+
+    private double[][] readings;
+    private int next;
+
+    @Setup
+    public void setup() {
+        readings = new double[READINGS][];
+        for (int i = 0; i < READINGS; i++) {
+            double x = (i % 8 - 3.5) / 8 * CAMERA_FRAME_PX_WIDTH;
+            double y = (i / 8 - 3.5) / 8 * CAMERA_FRAME_PX_HEIGHT;
+            readings[i] = new double[] { x, y, -45.0 + i };
+        }
+    }
+
+    private double[] nextReading() {
+        double[] reading = readings[next];
+        next = (next + 1) % READINGS;
+        return reading;
+    }
+
+    @Benchmark
+    public StuyVision.Report report() {
+        return new StuyVision.Report(nextReading());
+    }
+
+    @Benchmark
+    public void angleAndDistance(Blackhole bh) {
+        double[] reading = nextReading();
+        bh.consume(StuyVision.frameXPxToDegrees(reading[0]));
+        bh.consume(StuyVision.findBotDistanceToGoal(reading[1]));
+    }
+}
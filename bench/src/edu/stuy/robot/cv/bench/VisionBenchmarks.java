@@ -0,0 +1,41 @@
+package edu.stuy.robot.cv.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the vision benchmarks, reporting throughput, latency percentiles and
+ * (through the GC profiler's <code>gc.alloc.rate.norm</code>) bytes allocated
+ * per frame.
+ *
+ * Usage: <code>VisionBenchmarks [imageDir [regex [recording]]]</code>, where
+ * <code>recording</code> is the base path of a recording made on the robot,
+ * to benchmark the pipeline on instead of the images. Pass
+ * <code>-Dopencv.library=/path/to/libopencv_java310.so</code> to the JVM; it
+ * is passed on to the forked benchmark JVMs. Results are also written to
+ * <code>bench-results.json</code>, to compare between runs.
+ */
+public class VisionBenchmarks {
+
+    public static void main(String[] args) throws RunnerException {
+        String imageDir = args.length > 0 ? args[0] : "images";
+        String include = args.length > 1 ? args[1] : VisionBenchmarks.class.getPackage().getName() + ".*";
+        String recording = args.length > 2 ? args[2] : "";
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(include)
+                .param("imageDir", imageDir)
+                .param("recording", recording)
+                .addProfiler(GCProfiler.class)
+                .result("bench-results.json")
+                .resultFormat(ResultFormatType.JSON);
+        String openCV = System.getProperty("opencv.library");
+        if (openCV != null) {
+            options.jvmArgsAppend("-Dopencv.library=" + openCV);
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -5,8 +5,10 @@ import static edu.stuy.robot.RobotMap.JONAH_ID;
 import static edu.stuy.robot.RobotMap.SHOOTER_SPEED_LABEL;
 import static edu.stuy.robot.RobotMap.SIGNAL_LIGHT_BLUE_PORT;
 import static edu.stuy.robot.RobotMap.SIGNAL_LIGHT_YELLOW_PORT;
+import static edu.stuy.robot.RobotMap.VISION_RECORDING_DIR;
 import static edu.stuy.robot.RobotMap.YUBIN_ID;
 
+import edu.stuy.robot.commands.VisionBenchmarkCommand;
 import edu.stuy.robot.commands.auton.CrossObstacleThenShootCommand;
 import edu.stuy.robot.commands.auton.GoOverMoatCommand;
 import edu.stuy.robot.commands.auton.GoOverRampartsCommand;
@@ -121,6 +123,11 @@ public class Robot extends IterativeRobot {
 
         oi = new OI();
         vision = new StuyVision();
+        vision.setOdometrySource(drivetrain);
+        // Process frames continuously, so commands never wait on the camera
+        vision.startService();
+        // Measures the vision pipeline when pressed, even while disabled
+        SmartDashboard.putData("Vision benchmark", new VisionBenchmarkCommand(60, 300));
 
         drivetrain.setDrivetrainBrakeMode(true);
         shooter.setShooterBrakeMode(false);
@@ -198,6 +205,7 @@ public class Robot extends IterativeRobot {
     }
 
     public void disabledPeriodic() {
+        drivetrain.recordHeading();
         Scheduler.getInstance().run();
     }
 
@@ -205,6 +213,7 @@ public class Robot extends IterativeRobot {
         try {
             Robot.cvSignalLight.stayOff();
             debugMode = (Boolean) debugChooser.getSelected();
+            startVisionRecording();
             Command selected = (Command) autonChooser.getSelected();
             if (selected != selectedAutonomousCommand) {
                 int autonPosition = (Integer) autonPositionChooser.getSelected();
@@ -229,6 +238,7 @@ public class Robot extends IterativeRobot {
 
     public void autonomousPeriodic() {
         try {
+            drivetrain.recordHeading();
             Scheduler.getInstance().run();
             if (debugMode) {
                 SmartDashboard.putNumber("drivetrain left encoder", Robot.drivetrain.getLeftEncoderAbs());
@@ -261,6 +271,7 @@ public class Robot extends IterativeRobot {
                 autonomousCommand.cancel();
             }
             debugMode = (Boolean) debugChooser.getSelected();
+            startVisionRecording();
 
             Robot.drivetrain.resetEncoders();
 
@@ -283,6 +294,17 @@ public class Robot extends IterativeRobot {
      * to reset subsystems before shutting down.
      */
     public void disabledInit() {
+        vision.stopRecording();
+    }
+
+    /**
+     * In debug mode, record what the camera sees for replaying off the robot
+     * (see ReplayCaptureSource). Continues from auton into teleop.
+     */
+    private void startVisionRecording() {
+        if (debugMode) {
+            vision.startRecording(VISION_RECORDING_DIR + "vision-" + System.currentTimeMillis());
+        }
     }
 
     /**
@@ -290,6 +312,7 @@ public class Robot extends IterativeRobot {
      */
     public void teleopPeriodic() {
         try {
+            drivetrain.recordHeading();
             Scheduler.getInstance().run();
             Robot.blueSignalLight.tick();
             if (debugMode) {
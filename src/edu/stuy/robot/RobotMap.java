@@ -98,6 +98,7 @@ public interface RobotMap {
     int CAMERA_FRAME_PX_WIDTH = 360;
     double CAMERA_TILT_ANGLE = 34;
     double CAMERA_DIST_TO_BOT_FRONT = 28.0; // from camera to low omniwheel on arm when arm lowered
+    boolean CAMERA_RAW_YUYV = false; // threshold the camera's raw YUYV frames rather than BGR conversions
 
     double CAMERA_VIEWING_ANGLE_X = 61; // angular height of frame
     double CAMERA_VIEWING_ANGLE_Y = 34.3; // angular width of frame
@@ -106,6 +107,9 @@ public interface RobotMap {
 
     double HIGH_GOAL_HEIGHT = 90.0; // inches to center of goal from floor (measured)
     double CAMERA_HEIGHT_FROM_GROUND = 29.0; // inches
+    double MAX_VISION_WAIT = 0.5; // seconds a command waits for a new vision result before giving up
+    double MAX_AIM_READING_AGE = 0.25; // seconds; older readings are too stale to aim from
+    String VISION_RECORDING_DIR = "/media/sda1/"; // USB drive; raw frames would soon fill the roboRIO
 
     // Signal Lights
     int SIGNAL_LIGHT_RED_PORT = 4;
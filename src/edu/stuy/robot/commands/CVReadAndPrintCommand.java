@@ -4,6 +4,8 @@ import java.util.Arrays;
 
 import edu.stuy.robot.Robot;
 import edu.stuy.robot.cv.StuyVision;
+import edu.stuy.robot.cv.VisionResult;
+import edu.stuy.robot.cv.util.VisionClock;
 import edu.wpi.first.wpilibj.command.Command;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
@@ -25,10 +27,14 @@ public class CVReadAndPrintCommand extends Command {
     // Called just before this Command runs the first time
     protected void initialize() {
         try {
-            long start = System.currentTimeMillis();
-            double[] cvReading = null;
-            cvReading = Robot.vision.processImage(Robot.isDebugModeOn() && tryToSaveFile);
-            System.out.println("\n\n\n\n\n\n\n\n\n\nprocessImage took " + (System.currentTimeMillis() - start) + "ms");
+            if (Robot.isDebugModeOn() && tryToSaveFile) {
+                Robot.vision.requestFrameSave();
+            }
+            VisionResult result = Robot.vision.getLatestResult();
+            double[] cvReading = result == null ? null : result.getReading();
+            if (result != null) {
+                System.out.println("\n\n\n\n\n\n\n\n\n\nReading is " + (VisionClock.now() - result.getCaptureTime()) + "s old");
+            }
             System.out.println(new StuyVision.Report(cvReading));
             boolean canProceed = cvReading != null;
             SmartDashboard.putString("cv-reading", Arrays.toString(cvReading));
@@ -1,9 +1,12 @@
 package edu.stuy.robot.commands;
 
 import static edu.stuy.robot.RobotMap.LAYUP_SHOOTING_DISTANCE;
+import static edu.stuy.robot.RobotMap.MAX_VISION_WAIT;
 
 import edu.stuy.robot.Robot;
 import edu.stuy.robot.cv.StuyVision;
+import edu.stuy.robot.cv.VisionResult;
+import edu.stuy.robot.cv.util.VisionClock;
 import edu.stuy.util.BoolBox;
 
 /**
@@ -18,8 +21,23 @@ public class DriveToLayupRangeCommand extends EncoderDrivingCommand {
         requires(Robot.drivetrain);
     }
 
+    // Only use results whose frames were captured after this command started
+    private double startTime;
+
     protected void setInchesToMove() {
-        double[] cvReading = Robot.vision.processImage();
+        if (!waitingForDistance) {
+            // Called from initialize
+            startTime = VisionClock.now();
+        }
+        VisionResult result = Robot.vision.getResultAfter(startTime);
+        if (result == null) {
+            // Check again next execute(), unless we have waited too long
+            waitingForDistance = timeSinceInitialized() < MAX_VISION_WAIT;
+            cancelCommand = !waitingForDistance;
+            return;
+        }
+        waitingForDistance = false;
+        double[] cvReading = result.getReading();
         if (cvReading != null) {
             double curDistance = StuyVision.findBotDistanceToGoal(cvReading[1]);
             initialInchesToMove = curDistance - LAYUP_SHOOTING_DISTANCE;
@@ -27,7 +45,7 @@ public class DriveToLayupRangeCommand extends EncoderDrivingCommand {
             // CV failed!
             cancelCommand = true;
         }
-        System.out.println(new StuyVision.Report(cvReading));
+        System.out.println(result.getReport());
         if (cvReading != null) {
             System.out.println(StuyVision.findBotDistanceToGoal(cvReading[1]));
         }
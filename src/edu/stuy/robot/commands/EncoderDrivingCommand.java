@@ -6,13 +6,17 @@ import edu.stuy.util.BoolBox;
 /**
  * Abstract command for moving forward or back by a displacement
  * determined at runtime by one call to the <code>setInchesToMove</code>
- * method implemented by the subclass.
+ * method implemented by the subclass. If it sets
+ * <code>waitingForDistance</code>, it is called again on each
+ * <code>execute</code> until it clears it, and the robot does not move
+ * in the meantime.
  * @author Berkow
  */
 public abstract class EncoderDrivingCommand extends AutoMovementCommand {
 
     protected double initialInchesToMove; // positive is forward
     protected boolean cancelCommand; // set by subclass
+    protected boolean waitingForDistance; // set by subclass
 
     private boolean abort;
 
@@ -35,6 +39,7 @@ public abstract class EncoderDrivingCommand extends AutoMovementCommand {
             Robot.drivetrain.resetEncoders();
             initialInchesToMove = 0.0;
             cancelCommand = false;
+            waitingForDistance = false;
             abort = false;
             setInchesToMove();
         } catch (Exception e) {
@@ -51,7 +56,9 @@ public abstract class EncoderDrivingCommand extends AutoMovementCommand {
     protected void execute() {
         try {
             super.execute();
-            if (!getForceStopped()) {
+            if (waitingForDistance) {
+                setInchesToMove();
+            } else if (!getForceStopped()) {
                 double inchesToGo = inchesToMove();
                 double speed = 0.7 + 0.3 * Math.min(1.0, Math.pow(inchesToGo / distForMaxSpeed, 2));
                 // The above speed calculation is based on the one that has worked for GyroRotationalCommand
@@ -71,6 +78,9 @@ public abstract class EncoderDrivingCommand extends AutoMovementCommand {
         if (abort || cancelCommand || getForceStopped()) {
             return true;
         }
+        if (waitingForDistance) {
+            return false;
+        }
         return Math.abs(inchesToMove()) <= 3.0;
     }
 
@@ -10,7 +10,10 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 /**
  * Abstract command for rotating a certain number of degrees.
  * The angle to rotate is determined at runtime during initialize,
- * by the abstract method <code>getDesiredAngle</code>
+ * by the abstract method <code>getDesiredAngle</code>. If it sets
+ * <code>waitingForAngle</code>, it is called again on each
+ * <code>execute</code> until it clears it, and the robot does not move
+ * in the meantime.
  * @author Berkow
  *
  */
@@ -18,6 +21,7 @@ public abstract class GyroRotationalCommand extends AutoMovementCommand {
 
     protected double desiredAngle;
     protected boolean canProceed; // E.g., whether goal is in frame
+    protected boolean waitingForAngle; // E.g., while no fresh vision result is available
 
     private boolean abort; // When there is an error in a method
 
@@ -85,6 +89,7 @@ public abstract class GyroRotationalCommand extends AutoMovementCommand {
             // Set defaults for values accessible by setDesiredAngle
             desiredAngle = 0.0;
             canProceed = true; // Proceed by default
+            waitingForAngle = false;
             setDesiredAngle();
         } catch (Exception e) {
             System.out.println("Error in intialize in RotateToAimCommand:");
@@ -119,7 +124,11 @@ public abstract class GyroRotationalCommand extends AutoMovementCommand {
     protected void execute() {
         try {
             super.execute();
-            if (!getForceStopped()) {
+            if (waitingForAngle) {
+                // desiredAngle is still measured from the gyro reset in
+                // initialize, so the subclass may set it late
+                setDesiredAngle();
+            } else if (!getForceStopped()) {
                 double speed = gentleRotate
                         ? 0.53 + 0.15 * Math.pow(howMuchWeHaveToGo(), 2)
                         : 0.60 + 0.30 * Math.pow(howMuchWeHaveToGo(), 2);
@@ -152,6 +161,9 @@ public abstract class GyroRotationalCommand extends AutoMovementCommand {
             if (getForceStopped()) {
                 return true;
             }
+            if (waitingForAngle && !abort && canProceed) {
+                return false;
+            }
             // When no more can or should be done:
             if (abort || !canProceed || Math.abs(desiredAngle) < 0.001) {
                 // The last condition above is *not* the judgment of whether aiming has
@@ -1,9 +1,14 @@
 package edu.stuy.robot.commands;
 
+import static edu.stuy.robot.RobotMap.MAX_AIM_READING_AGE;
+import static edu.stuy.robot.RobotMap.MAX_VISION_WAIT;
+
 import java.util.Arrays;
 
 import edu.stuy.robot.Robot;
 import edu.stuy.robot.cv.StuyVision;
+import edu.stuy.robot.cv.VisionResult;
+import edu.stuy.robot.cv.util.VisionClock;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 /**
@@ -30,14 +35,42 @@ public class RotateToAimCommand extends GyroRotationalCommand {
     }
 
     private double[] cvReading;
+    // Only aim from results whose frames were captured after this time
+    private double oldestUsableCaptureTime;
 
     protected void setDesiredAngle() {
-        cvReading = Robot.vision.processImage();
-        canProceed = cvReading != null;
+        if (!waitingForAngle) {
+            // Called from initialize. Latency is compensated for below, so a
+            // slightly old reading is as good as a new one.
+            oldestUsableCaptureTime = VisionClock.now() - MAX_AIM_READING_AGE;
+            cvReading = null;
+        }
+        VisionResult result = Robot.vision.getResultAfter(oldestUsableCaptureTime);
+        if (result == null) {
+            // Check again next execute(), unless we have waited too long
+            waitingForAngle = timeSinceInitialized() < MAX_VISION_WAIT;
+            canProceed = waitingForAngle;
+            if (!canProceed) {
+                System.out.println("No vision result in " + MAX_VISION_WAIT + "s");
+                SmartDashboard.putBoolean("cv-visible", false);
+                Robot.cvFoundGoal = false;
+            }
+            return;
+        }
+        waitingForAngle = false;
+        cvReading = result.getReading();
+        canProceed = result.hasGoal();
         SmartDashboard.putString("cv-reading", Arrays.toString(cvReading));
         if (canProceed) {
-            desiredAngle = StuyVision.frameXPxToDegrees(cvReading[0]);
+            // The frame was captured a little while ago, and the robot may
+            // have been turning since. Aim for the heading the goal was at
+            // when the frame was captured, measured from the gyro reset in
+            // initialize() (which may have been a few loops ago).
+            double headingAtCapture = Robot.drivetrain.getHeadingAt(result.getCaptureTime());
+            double headingAtReset = Robot.drivetrain.getHeading() - Robot.drivetrain.getGyroAngle();
+            desiredAngle = result.getGoalDegsX() + headingAtCapture - headingAtReset;
             SmartDashboard.putNumber("cv-angle", desiredAngle);
+            SmartDashboard.putNumber("cv-turned-since-capture", Robot.drivetrain.getHeading() - headingAtCapture);
         }
         SmartDashboard.putBoolean("cv-visible", canProceed);
         // For auton:
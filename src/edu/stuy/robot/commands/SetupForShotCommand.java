@@ -27,8 +27,9 @@ public class SetupForShotCommand extends CommandGroup {
 
         addSequential(new ResetForceStopCommand());
 
-        addSequential(new RotateToAimCommand(false, 1.5)); // Coarse rotation
-        addSequential(new RotateToAimCommand(true)); // Refining rotation
+        // Readings are corrected for any turning since their frame was
+        // captured, so one rotation is enough
+        addSequential(new RotateToAimCommand(true));
 
         addSequential(new DriveToLayupRangeCommand());
 
@@ -0,0 +1,67 @@
+package edu.stuy.robot.commands;
+
+import edu.stuy.robot.Robot;
+import edu.stuy.robot.cv.VisionBenchmark;
+import edu.wpi.first.wpilibj.command.Command;
+
+/**
+ * Measures the latencies of the vision service on the robot, and reports
+ * their percentiles to SmartDashboard and to a file. Can be run while
+ * disabled, e.g. from its SmartDashboard button.
+ */
+public class VisionBenchmarkCommand extends Command {
+
+    private static final String RESULTS_FILE = "vision-benchmark.txt";
+
+    private final int warmup;
+    private final int iterations;
+    private VisionBenchmark benchmark;
+
+    public VisionBenchmarkCommand(int warmup, int iterations) {
+        // Use requires() here to declare subsystem dependencies
+        // eg. requires(chassis);
+        this.warmup = warmup;
+        this.iterations = iterations;
+        setRunWhenDisabled(true);
+        // Generously long enough for the camera's 30fps
+        setTimeout((warmup + iterations) / 30.0 * 3 + 5);
+    }
+
+    // Called just before this Command runs the first time
+    protected void initialize() {
+        benchmark = new VisionBenchmark(warmup, iterations);
+        Robot.vision.startBenchmark(benchmark);
+        System.out.println("Started vision benchmark of " + iterations + " frames");
+    }
+
+    // Called repeatedly when this Command is scheduled to run
+    protected void execute() {
+    }
+
+    // Make this return true when this Command no longer needs to run execute()
+    protected boolean isFinished() {
+        return benchmark.isDone() || isTimedOut();
+    }
+
+    // Called once after isFinished returns true
+    protected void end() {
+        if (!benchmark.isDone()) {
+            System.out.println("Vision benchmark timed out; is the vision service running?");
+            Robot.vision.startBenchmark(null);
+            return;
+        }
+        System.out.println(benchmark);
+        benchmark.publish();
+        try {
+            benchmark.writeTo(RESULTS_FILE);
+        } catch (Exception e) {
+            System.out.println("Could not write vision benchmark results: " + e);
+        }
+    }
+
+    // Called when another command which requires one or more of the same
+    // subsystems is scheduled to run
+    protected void interrupted() {
+        Robot.vision.startBenchmark(null);
+    }
+}
@@ -0,0 +1,523 @@
+package edu.stuy.robot.cv;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.RotatedRect;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Finds the 8-connected blobs of a binary mask, and their statistics, in a
+ * single pass over its pixels or, for a <code>RunMask</code>, its runs, as an
+ * alternative to finding contours.
+ *
+ * Each set pixel takes the label of a set neighbour above or to its left, or
+ * a new label if it has none, and labels found to touch are merged with a
+ * union-find. The area, bounding box and sums for the centroid and second
+ * moments are added up per label during the pass and merged at the end, so
+ * blobs can be rejected on them without looking at their pixels again. Only
+ * for a blob that is worth it does <code>fitRect</code> go back over its
+ * bounding box, to fit a rotated rectangle to the ends of each of its rows.
+ *
+ * Like <code>VisionWorkspace</code>, must only be used by one thread at a
+ * time, and the blobs it returns are only valid until the next
+ * <code>extract</code>.
+ */
+class BlobExtractor {
+
+    static class Blob {
+        int label;
+        // Number of pixels
+        int area;
+        // What Imgproc.contourArea gives for the blob's contour, which runs
+        // through the centers of its edge pixels, so is smaller by about half
+        // the perimeter. Only set by select, for the blobs it keeps.
+        double contourArea;
+        // Bounding box, inclusive
+        int minX;
+        int minY;
+        int maxX;
+        int maxY;
+        // Sums over the blob's pixels of x, y, x^2, y^2 and xy
+        long sumX;
+        long sumY;
+        long sumXX;
+        long sumYY;
+        long sumXY;
+
+        int width() {
+            return maxX - minX + 1;
+        }
+
+        int height() {
+            return maxY - minY + 1;
+        }
+
+        double centroidX() {
+            return (double) sumX / area;
+        }
+
+        double centroidY() {
+            return (double) sumY / area;
+        }
+
+        /**
+         * @return The central second moment about the x axis, divided by the
+         * area
+         */
+        double mu20() {
+            double cx = centroidX();
+            return (double) sumXX / area - cx * cx;
+        }
+
+        double mu02() {
+            double cy = centroidY();
+            return (double) sumYY / area - cy * cy;
+        }
+
+        double mu11() {
+            return (double) sumXY / area - centroidX() * centroidY();
+        }
+
+        /**
+         * @return The ratio of the longer side of the bounding box to the
+         * shorter one
+         */
+        double boxRatio() {
+            int w = width();
+            int h = height();
+            return w > h ? (double) w / h : (double) h / w;
+        }
+
+        void add(Blob other) {
+            area += other.area;
+            minX = Math.min(minX, other.minX);
+            minY = Math.min(minY, other.minY);
+            maxX = Math.max(maxX, other.maxX);
+            maxY = Math.max(maxY, other.maxY);
+            sumX += other.sumX;
+            sumY += other.sumY;
+            sumXX += other.sumXX;
+            sumYY += other.sumYY;
+            sumXY += other.sumXY;
+        }
+    }
+
+    // Reused across frames, and only ever grown
+    private byte[] pixels = new byte[0];
+    private int[] labels = new int[0];
+    // Union-find parent and statistics of each label. Label 0 is the
+    // background.
+    private int[] parent = new int[256];
+    private Blob[] stats = new Blob[256];
+    private int labelCount;
+    private int rows;
+    private int cols;
+
+    private Blob[] blobs = new Blob[16];
+    private int blobCount;
+
+    // Set when the blobs were labelled from runs rather than pixels, with
+    // the label of each run
+    private RunMask runs;
+    private int[] runLabels = new int[0];
+
+    private float[] extremes = new float[0];
+    private final MatOfPoint2f points = new MatOfPoint2f();
+
+    /**
+     * Label the blobs of <code>mask</code>, a <code>CV_8UC1</code> image
+     *
+     * @return The number of blobs, which are then returned by
+     * <code>get</code>
+     */
+    int extract(Mat mask) {
+        rows = mask.rows();
+        cols = mask.cols();
+        int n = rows * cols;
+        if (labels.length < n) {
+            pixels = new byte[n];
+            labels = new int[n];
+        }
+        mask.get(0, 0, pixels);
+        runs = null;
+        labelCount = 1;
+
+        for (int y = 0; y < rows; y++) {
+            int row = y * cols;
+            for (int x = 0; x < cols; x++) {
+                int i = row + x;
+                if (pixels[i] == 0) {
+                    labels[i] = 0;
+                    continue;
+                }
+                // Neighbours already labelled: left, and the three above
+                int label = x > 0 ? labels[i - 1] : 0;
+                if (y > 0) {
+                    int above = i - cols;
+                    label = join(label, labels[above]);
+                    if (x > 0) {
+                        label = join(label, labels[above - 1]);
+                    }
+                    if (x < cols - 1) {
+                        label = join(label, labels[above + 1]);
+                    }
+                }
+                if (label == 0) {
+                    label = newLabel(x, y);
+                }
+                labels[i] = label;
+                Blob s = stats[label];
+                s.area++;
+                if (x < s.minX) {
+                    s.minX = x;
+                }
+                if (x > s.maxX) {
+                    s.maxX = x;
+                }
+                s.maxY = y;
+                s.sumX += x;
+                s.sumY += y;
+                s.sumXX += x * x;
+                s.sumYY += y * y;
+                s.sumXY += x * y;
+            }
+        }
+
+        return collect();
+    }
+
+    /**
+     * Label the blobs of a run-length mask. Each run is joined with the runs
+     * of the row above that touch it, including diagonally, and its
+     * statistics are added in closed form, so the work is in proportion to
+     * the number of runs rather than of pixels.
+     *
+     * @return The number of blobs, which are then returned by
+     * <code>get</code>
+     */
+    int extract(RunMask mask) {
+        runs = mask;
+        rows = mask.rows;
+        cols = mask.cols;
+        if (runLabels.length < mask.count) {
+            runLabels = new int[mask.starts.length];
+        }
+        labelCount = 1;
+        int[] starts = mask.starts;
+        int[] ends = mask.ends;
+        for (int y = 0; y < mask.rows; y++) {
+            int above = y > 0 ? mask.rowStart[y - 1] : 0;
+            int aboveEnd = mask.rowStart[y];
+            for (int k = mask.rowStart[y]; k < mask.rowStart[y + 1]; k++) {
+                int start = starts[k];
+                int end = ends[k];
+                // Runs above are in order, so any that end too far left of
+                // this run also do for the runs after it
+                while (above < aboveEnd && ends[above] < start) {
+                    above++;
+                }
+                int label = 0;
+                for (int j = above; j < aboveEnd && starts[j] <= end; j++) {
+                    label = join(label, runLabels[j]);
+                }
+                if (label == 0) {
+                    label = newLabel(start, y);
+                }
+                runLabels[k] = label;
+                Blob s = stats[label];
+                long length = end - start;
+                long last = end - 1;
+                long sumX = (start + last) * length / 2;
+                s.area += length;
+                if (start < s.minX) {
+                    s.minX = start;
+                }
+                if (last > s.maxX) {
+                    s.maxX = (int) last;
+                }
+                s.maxY = y;
+                s.sumX += sumX;
+                s.sumY += y * length;
+                s.sumXX += sumOfSquares(last) - sumOfSquares(start - 1);
+                s.sumYY += (long) y * y * length;
+                s.sumXY += y * sumX;
+            }
+        }
+        return collect();
+    }
+
+    /**
+     * @return 0^2 + 1^2 + ... + n^2
+     */
+    private static long sumOfSquares(long n) {
+        return n * (n + 1) * (2 * n + 1) / 6;
+    }
+
+    /**
+     * Gather the blobs once every label has been assigned
+     *
+     * @return The number of blobs
+     */
+    private int collect() {
+        // Fold the statistics of each label into its root. Labels are always
+        // joined under the smaller one, so going from the largest label down
+        // only ever adds to labels not yet visited.
+        for (int label = labelCount - 1; label >= 1; label--) {
+            int p = parent[label];
+            if (p != label) {
+                stats[p].add(stats[label]);
+            }
+        }
+        blobCount = 0;
+        for (int label = 1; label < labelCount; label++) {
+            parent[label] = parent[parent[label]];
+            if (parent[label] == label) {
+                if (blobCount == blobs.length) {
+                    Blob[] grown = new Blob[blobCount * 2];
+                    System.arraycopy(blobs, 0, grown, 0, blobCount);
+                    blobs = grown;
+                }
+                blobs[blobCount++] = stats[label];
+            }
+        }
+        return blobCount;
+    }
+
+    Blob get(int i) {
+        return blobs[i];
+    }
+
+    /**
+     * Move the blobs with a contour area in <code>[minArea, maxArea]</code>,
+     * as <code>contourArea</code> would give for their contours, and a
+     * bounding box no more elongated than <code>maxBoxRatio</code> to the
+     * front, largest first, and drop the rest
+     *
+     * @return The number of blobs kept
+     */
+    int select(double minArea, double maxArea, double maxBoxRatio) {
+        int kept = 0;
+        for (int i = 0; i < blobCount; i++) {
+            Blob b = blobs[i];
+            // The contour area is never more than the pixel count, so only
+            // blobs that could pass are worth finding their edges for
+            if (b.area < minArea || b.boxRatio() > maxBoxRatio) {
+                continue;
+            }
+            b.contourArea = contourArea(b);
+            if (b.contourArea < minArea || b.contourArea > maxArea) {
+                continue;
+            }
+            // Insertion sort, as only a handful of blobs ever pass
+            int j = kept++;
+            while (j > 0 && blobs[j - 1].contourArea < b.contourArea) {
+                blobs[j] = blobs[j - 1];
+                j--;
+            }
+            blobs[j] = b;
+        }
+        blobCount = kept;
+        return kept;
+    }
+
+    /**
+     * @return The area of the polygon through the centers of the blob's edge
+     * pixels, as <code>contourArea</code> gives for its outer contour. By
+     * Pick's theorem, that is the number of pixels inside the polygon plus
+     * half of those on it, less one, which is exact for blobs without holes
+     * or parts one pixel thin.
+     */
+    private double contourArea(Blob blob) {
+        int edge = 0;
+        for (int y = blob.minY; y <= blob.maxY; y++) {
+            edge += runs != null ? edgePixelsOfRuns(blob, y) : edgePixels(blob, y);
+        }
+        return Math.max(0, blob.area - edge / 2.0 - 1);
+    }
+
+    /**
+     * @return The number of pixels of <code>blob</code> in row
+     * <code>y</code> with a 4-neighbour outside it, counting the outside of
+     * the mask as outside the blob
+     */
+    private int edgePixels(Blob blob, int y) {
+        int edge = 0;
+        int row = y * cols;
+        for (int x = blob.minX; x <= blob.maxX; x++) {
+            int i = row + x;
+            if (!inBlob(i, blob)) {
+                continue;
+            }
+            if (x == 0 || x == cols - 1 || y == 0 || y == rows - 1 || !inBlob(i - 1, blob)
+                    || !inBlob(i + 1, blob) || !inBlob(i - cols, blob) || !inBlob(i + cols, blob)) {
+                edge++;
+            }
+        }
+        return edge;
+    }
+
+    private boolean inBlob(int i, Blob blob) {
+        int label = labels[i];
+        return label != 0 && find(label) == blob.label;
+    }
+
+    /**
+     * <code>edgePixels</code> for run-length masks. Runs of a row never
+     * touch, so the ends of each run are edge pixels, and the rest are
+     * unless the pixels above and below are both set, and so in the blob.
+     */
+    private int edgePixelsOfRuns(Blob blob, int y) {
+        int edge = 0;
+        for (int k = runs.rowStart[y]; k < runs.rowStart[y + 1]; k++) {
+            if (find(runLabels[k]) != blob.label) {
+                continue;
+            }
+            int start = runs.starts[k];
+            int end = runs.ends[k];
+            edge += end - start;
+            if (y > 0 && y < rows - 1) {
+                // Keep the pixels between the ends that are covered above
+                // and below
+                edge -= coveredAboveAndBelow(y, Math.max(start + 1, 1), Math.min(end - 1, cols - 1));
+            }
+        }
+        return edge;
+    }
+
+    /**
+     * @return The number of pixels in columns <code>[start, end)</code> set
+     * in both row <code>y - 1</code> and row <code>y + 1</code>
+     */
+    private int coveredAboveAndBelow(int y, int start, int end) {
+        int covered = 0;
+        for (int a = runs.rowStart[y - 1]; a < runs.rowStart[y]; a++) {
+            int aStart = Math.max(start, runs.starts[a]);
+            int aEnd = Math.min(end, runs.ends[a]);
+            if (aStart >= aEnd) {
+                continue;
+            }
+            for (int b = runs.rowStart[y + 1]; b < runs.rowStart[y + 2]; b++) {
+                int bStart = Math.max(aStart, runs.starts[b]);
+                int bEnd = Math.min(aEnd, runs.ends[b]);
+                if (bStart < bEnd) {
+                    covered += bEnd - bStart;
+                }
+            }
+        }
+        return covered;
+    }
+
+    /**
+     * @return The smaller root of the two labels, having joined them, where
+     * label 0 joins nothing
+     */
+    private int join(int a, int b) {
+        if (b == 0) {
+            return a;
+        }
+        b = find(b);
+        if (a == 0) {
+            return b;
+        }
+        a = find(a);
+        if (a < b) {
+            parent[b] = a;
+            return a;
+        }
+        parent[a] = b;
+        return b;
+    }
+
+    private int find(int label) {
+        while (parent[label] != label) {
+            // Halve the path on the way up
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+
+    private int newLabel(int x, int y) {
+        int label = labelCount++;
+        if (label == parent.length) {
+            int[] grownParent = new int[label * 2];
+            System.arraycopy(parent, 0, grownParent, 0, label);
+            parent = grownParent;
+            Blob[] grownStats = new Blob[label * 2];
+            System.arraycopy(stats, 0, grownStats, 0, label);
+            stats = grownStats;
+        }
+        Blob s = stats[label];
+        if (s == null) {
+            s = stats[label] = new Blob();
+        }
+        parent[label] = label;
+        s.label = label;
+        s.area = 0;
+        s.minX = x;
+        s.maxX = x;
+        s.minY = y;
+        s.maxY = y;
+        s.sumX = 0;
+        s.sumY = 0;
+        s.sumXX = 0;
+        s.sumYY = 0;
+        s.sumXY = 0;
+        return label;
+    }
+
+    /**
+     * Fit the smallest rotated rectangle around <code>blob</code>. The
+     * leftmost and rightmost pixels of each of its rows have the same convex
+     * hull as the whole blob, so the rectangle is the same as
+     * <code>minAreaRect</code> of its contour.
+     *
+     * @param offsetX
+     * Added to the rectangle's x coordinates, e.g. to give them in the full
+     * frame when the mask is a crop of it
+     */
+    RotatedRect fitRect(Blob blob, double offsetX, double offsetY) {
+        int needed = blob.height() * 4;
+        if (extremes.length < needed) {
+            extremes = new float[needed];
+        }
+        int count = 0;
+        for (int y = blob.minY; y <= blob.maxY; y++) {
+            int left = -1;
+            int right = -1;
+            if (runs != null) {
+                for (int k = runs.rowStart[y]; k < runs.rowStart[y + 1]; k++) {
+                    if (find(runLabels[k]) == blob.label) {
+                        if (left < 0) {
+                            left = runs.starts[k];
+                        }
+                        right = runs.ends[k] - 1;
+                    }
+                }
+            } else {
+                int row = y * cols;
+                for (int x = blob.minX; x <= blob.maxX; x++) {
+                    int label = labels[row + x];
+                    if (label != 0 && find(label) == blob.label) {
+                        if (left < 0) {
+                            left = x;
+                        }
+                        right = x;
+                    }
+                }
+            }
+            if (left < 0) {
+                continue;
+            }
+            extremes[count++] = (float) (left + offsetX);
+            extremes[count++] = (float) (y + offsetY);
+            extremes[count++] = (float) (right + offsetX);
+            extremes[count++] = (float) (y + offsetY);
+        }
+        // put() stops at the end of the Mat, ignoring the rest of the array
+        points.create(count / 2, 1, CvType.CV_32FC2);
+        points.put(0, 0, extremes);
+        return Imgproc.minAreaRect(points);
+    }
+}
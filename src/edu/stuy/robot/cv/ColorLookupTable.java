@@ -0,0 +1,166 @@
+package edu.stuy.robot.cv;
+
+import java.util.Arrays;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Classifies BGR pixels as goal or not-goal with one table lookup per pixel,
+ * instead of converting the whole frame to HSV and filtering it.
+ *
+ * The table has one entry per quantized BGR color, holding 255 if the HSV
+ * equivalent of that color lies within the current bounds and 0 otherwise,
+ * converted with <code>JavaFilter</code>'s exact copy of
+ * <code>cvtColor</code>'s arithmetic.
+ * Whenever the bounds change, a new table is built on a background thread
+ * while the old one stays in use, so classification never waits on a
+ * rebuild.
+ *
+ * A table can instead be built for images of Y, U and V, as made from raw
+ * camera frames, in which case each entry is for a quantized YUV color.
+ */
+public class ColorLookupTable {
+
+    // Bits kept from each of B, G and R
+    private static final int BITS = 6;
+    private static final int SHIFT = 8 - BITS;
+    private static final int LEVELS = 1 << BITS;
+
+    // Whether images are YUV rather than BGR
+    private final boolean yuv;
+
+    // Current table and the bounds it was built for. Both are replaced, never
+    // modified, once published.
+    private volatile byte[] table;
+    private volatile int[] tableBounds;
+
+    // minH, maxH, minS, maxS, minV, maxV requested most recently, guarded by
+    // `this`
+    private int[] requestedBounds;
+    private boolean building;
+
+    // Reused by classify()
+    private byte[] pixels = new byte[0];
+    private byte[] classified = new byte[0];
+
+    public ColorLookupTable() {
+        this(false);
+    }
+
+    /**
+     * @param yuv
+     * Whether the images to classify hold Y, U and V rather than B, G and R
+     */
+    public ColorLookupTable(boolean yuv) {
+        this.yuv = yuv;
+    }
+
+    /**
+     * Request a table for the given bounds, in OpenCV's 8-bit HSV ranges. If
+     * they differ from the last request, a rebuild is started in the
+     * background. Cheap enough to call every frame.
+     */
+    public void setBounds(int minH, int maxH, int minS, int maxS, int minV, int maxV) {
+        int[] bounds = { minH, maxH, minS, maxS, minV, maxV };
+        synchronized (this) {
+            if (Arrays.equals(bounds, requestedBounds)) {
+                return;
+            }
+            requestedBounds = bounds;
+            if (building) {
+                // The running rebuild will notice the new request when it is
+                // done
+                return;
+            }
+            building = true;
+        }
+        Thread t = new Thread(this::rebuildUntilCurrent, "Color Lookup Table Builder");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Classify every pixel of <code>bgr</code> into <code>mask</code>.
+     *
+     * @param bgr
+     * A <code>CV_8UC3</code> BGR image, or YUV image if the table is for
+     * YUV
+     * @param mask
+     * Set to a <code>CV_8UC1</code> image of the same size, holding 255 for
+     * goal-colored pixels and 0 elsewhere
+     * @return <code>false</code>, leaving <code>mask</code> untouched, if no
+     * table has been built yet
+     */
+    public boolean classify(Mat bgr, Mat mask) {
+        byte[] lut = table;
+        if (lut == null) {
+            return false;
+        }
+        int rows = bgr.rows();
+        int cols = bgr.cols();
+        int n = rows * cols;
+        // Only ever grow the buffers, as frames and crops of different sizes
+        // are classified one after another. get() and put() stop at the end
+        // of the Mat.
+        if (classified.length < n) {
+            pixels = new byte[n * 3];
+            classified = new byte[n];
+        }
+        bgr.get(0, 0, pixels);
+        byte[] in = pixels;
+        byte[] out = classified;
+        for (int i = 0, j = 0; i < n; i++, j += 3) {
+            int b = (in[j] & 0xFF) >> SHIFT;
+            int g = (in[j + 1] & 0xFF) >> SHIFT;
+            int r = (in[j + 2] & 0xFF) >> SHIFT;
+            out[i] = lut[(b << (2 * BITS)) | (g << BITS) | r];
+        }
+        mask.create(rows, cols, CvType.CV_8UC1);
+        mask.put(0, 0, out);
+        return true;
+    }
+
+    private void rebuildUntilCurrent() {
+        for (;;) {
+            int[] bounds;
+            synchronized (this) {
+                if (Arrays.equals(tableBounds, requestedBounds)) {
+                    building = false;
+                    return;
+                }
+                bounds = requestedBounds;
+            }
+            byte[] built = build(bounds, yuv);
+            synchronized (this) {
+                table = built;
+                tableBounds = bounds;
+            }
+        }
+    }
+
+    private static byte[] build(int[] bounds, boolean yuv) {
+        byte[] lut = new byte[LEVELS * LEVELS * LEVELS];
+        int[] bgr = new int[3];
+        int half = (1 << SHIFT) / 2;
+        // b, g and r are the first, second and third channels, which for YUV
+        // are Y, U and V
+        for (int b = 0; b < LEVELS; b++) {
+            for (int g = 0; g < LEVELS; g++) {
+                for (int r = 0; r < LEVELS; r++) {
+                    // Classify the color at the center of the bin
+                    bgr[0] = (b << SHIFT) + half;
+                    bgr[1] = (g << SHIFT) + half;
+                    bgr[2] = (r << SHIFT) + half;
+                    if (yuv) {
+                        YuvConverter.toBgr(bgr[0], bgr[1], bgr[2], bgr);
+                    }
+                    boolean inRange = JavaFilter.inRange(bgr[0], bgr[1], bgr[2], bounds[0], bounds[1], bounds[2],
+                            bounds[3], bounds[4], bounds[5]);
+                    lut[(b << (2 * BITS)) | (g << BITS) | r] = inRange ? (byte) 255 : 0;
+                }
+            }
+        }
+        return lut;
+    }
+}
@@ -0,0 +1,32 @@
+package edu.stuy.robot.cv;
+
+import org.opencv.core.RotatedRect;
+
+/**
+ * A region of the filtered image that passed the goal area and aspect ratio
+ * thresholds.
+ */
+class GoalCandidate {
+
+    final RotatedRect rect;
+    final double area;
+
+    GoalCandidate(RotatedRect rect, double area) {
+        this.rect = rect;
+        this.area = area;
+    }
+
+    /**
+     * @return Whichever of <code>a</code> and <code>b</code> has the larger
+     * area, ignoring <code>null</code>s
+     */
+    static GoalCandidate larger(GoalCandidate a, GoalCandidate b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return b.area > a.area ? b : a;
+    }
+}
@@ -0,0 +1,55 @@
+package edu.stuy.robot.cv;
+
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+
+/**
+ * Remembers where the goal was last found so that the next frame only needs
+ * to be searched around there. Between two frames the goal barely moves, so
+ * a padded region around the previous detection is almost always enough.
+ */
+class GoalTracker {
+
+    private Rect lastGoal;
+    private int framesTracked;
+
+    /**
+     * @param padding
+     * Pixels to add on every side of the last goal's bounding box
+     * @param maxTrackedFrames
+     * How many frames in a row may be searched only partially before the
+     * whole frame is searched again
+     * @return The region of the frame to search, or <code>null</code> if the
+     * whole frame should be searched
+     */
+    Rect searchRegion(int frameWidth, int frameHeight, int padding, int maxTrackedFrames) {
+        if (lastGoal == null || framesTracked >= maxTrackedFrames) {
+            return null;
+        }
+        int left = Math.max(0, lastGoal.x - padding);
+        int top = Math.max(0, lastGoal.y - padding);
+        int right = Math.min(frameWidth, lastGoal.x + lastGoal.width + padding);
+        int bottom = Math.min(frameHeight, lastGoal.y + lastGoal.height + padding);
+        if (right <= left || bottom <= top) {
+            return null;
+        }
+        return new Rect(left, top, right - left, bottom - top);
+    }
+
+    /**
+     * @param goal
+     * The goal found in the latest frame, or <code>null</code> if there was
+     * none
+     * @param searchedFullFrame
+     * Whether the goal was searched for in the whole frame
+     */
+    void update(RotatedRect goal, boolean searchedFullFrame) {
+        if (goal == null) {
+            lastGoal = null;
+            framesTracked = 0;
+            return;
+        }
+        lastGoal = goal.boundingRect();
+        framesTracked = searchedFullFrame ? 0 : framesTracked + 1;
+    }
+}
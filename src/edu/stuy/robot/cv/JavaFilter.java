@@ -0,0 +1,234 @@
+package edu.stuy.robot.cv;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * The HSV threshold, erode and dilate done in plain Java on a copy of the
+ * frame, as an alternative to the OpenCV calls. The frame is copied out of
+ * its <code>Mat</code> once, and the mask put back once, so that
+ * <code>findContours</code> can run on it as usual.
+ *
+ * The threshold never builds an HSV image: V is checked first, and S and H
+ * are only computed for pixels that pass it, with the same integer
+ * arithmetic as <code>Imgproc.cvtColor</code> so the mask comes out
+ * identical. The erode and dilate use rectangular kernels, so each is done
+ * as a horizontal pass followed by a vertical one, keeping a running count
+ * of the set pixels under the kernel instead of looking at all of them.
+ *
+ * Like <code>VisionWorkspace</code>, must only be used by one thread at a
+ * time.
+ */
+class JavaFilter {
+
+    // Fixed-point tables used by cvtColor's 8-bit BGR to HSV conversion
+    private static final int HSV_SHIFT = 12;
+    private static final int HSV_ROUND = 1 << (HSV_SHIFT - 1);
+    private static final int[] S_DIV = new int[256];
+    private static final int[] H_DIV = new int[256];
+
+    static {
+        for (int i = 1; i < 256; i++) {
+            S_DIV[i] = (int) Math.round((255 << HSV_SHIFT) / (double) i);
+            H_DIV[i] = (int) Math.round((180 << HSV_SHIFT) / (6.0 * i));
+        }
+    }
+
+    private static final byte SET = (byte) 255;
+
+    // Reused across frames, and only ever grown
+    private byte[] pixels = new byte[0];
+    private byte[] mask = new byte[0];
+    private byte[] temp = new byte[0];
+    private int[] counts = new int[0];
+
+    /**
+     * Binarize <code>image</code> into <code>out</code> as the OpenCV filter
+     * does: <code>inRange</code> on its HSV conversion, then erode and
+     * dilate with square kernels of side <code>erode</code> and
+     * <code>dilate</code>
+     *
+     * @param afterThreshold
+     * If not <code>null</code>, set to the mask before the erode and dilate,
+     * for the gui
+     */
+    void filter(Mat image, Mat out, int minH, int maxH, int minS, int maxS, int minV, int maxV, int erode,
+            int dilate, Mat afterThreshold) {
+        int rows = image.rows();
+        int cols = image.cols();
+        int n = rows * cols;
+        if (pixels.length < n * 3) {
+            pixels = new byte[n * 3];
+        }
+        if (mask.length < n) {
+            mask = new byte[n];
+            temp = new byte[n];
+        }
+        if (counts.length < cols) {
+            counts = new int[cols];
+        }
+        image.get(0, 0, pixels);
+        threshold(pixels, mask, n, minH, maxH, minS, maxS, minV, maxV);
+        if (afterThreshold != null) {
+            afterThreshold.create(rows, cols, CvType.CV_8UC1);
+            afterThreshold.put(0, 0, mask);
+        }
+        morph(rows, cols, erode, true);
+        morph(rows, cols, dilate, false);
+        out.create(rows, cols, CvType.CV_8UC1);
+        out.put(0, 0, mask);
+    }
+
+    private static void threshold(byte[] in, byte[] out, int n, int minH, int maxH, int minS, int maxS, int minV,
+            int maxV) {
+        for (int i = 0, j = 0; i < n; i++, j += 3) {
+            out[i] = inRange(in[j] & 0xFF, in[j + 1] & 0xFF, in[j + 2] & 0xFF, minH, maxH, minS, maxS, minV, maxV)
+                    ? SET : 0;
+        }
+    }
+
+    /**
+     * Threshold <code>image</code> like <code>filter</code>, but straight into
+     * runs, then erode and dilate the runs. Nothing the size of the frame is
+     * written, and the erode and dilate only take time in proportion to the
+     * number of runs.
+     */
+    void filterRuns(Mat image, RunMask out, RunMask scratch, int minH, int maxH, int minS, int maxS, int minV,
+            int maxV, int erode, int dilate) {
+        int rows = image.rows();
+        int cols = image.cols();
+        int n = rows * cols;
+        if (pixels.length < n * 3) {
+            pixels = new byte[n * 3];
+        }
+        image.get(0, 0, pixels);
+        byte[] in = pixels;
+        out.reset(rows, cols);
+        for (int y = 0, j = 0; y < rows; y++) {
+            int start = -1;
+            for (int x = 0; x < cols; x++, j += 3) {
+                boolean set = inRange(in[j] & 0xFF, in[j + 1] & 0xFF, in[j + 2] & 0xFF, minH, maxH, minS, maxS, minV,
+                        maxV);
+                if (set && start < 0) {
+                    start = x;
+                } else if (!set && start >= 0) {
+                    out.add(start, x);
+                    start = -1;
+                }
+            }
+            if (start >= 0) {
+                out.add(start, cols);
+            }
+            out.endRow(y);
+        }
+        out.morph(erode, true, scratch);
+        out.morph(dilate, false, scratch);
+    }
+
+    /**
+     * @return Whether the color lies within the bounds, in OpenCV's 8-bit HSV
+     * ranges. V is checked first, and S and H are only computed if need be.
+     * Also used to build <code>ColorLookupTable</code>s, so the table agrees
+     * with this filter and with <code>cvtColor</code>.
+     */
+    static boolean inRange(int b, int g, int r, int minH, int maxH, int minS, int maxS, int minV,
+            int maxV) {
+        int v = Math.max(r, Math.max(g, b));
+        if (v < minV || v > maxV) {
+            return false;
+        }
+        int diff = v - Math.min(r, Math.min(g, b));
+        int s = (diff * S_DIV[v] + HSV_ROUND) >> HSV_SHIFT;
+        if (s < minS || s > maxS) {
+            return false;
+        }
+        int h;
+        if (v == r) {
+            h = g - b;
+        } else if (v == g) {
+            h = b - r + 2 * diff;
+        } else {
+            h = r - g + 4 * diff;
+        }
+        h = (h * H_DIV[diff] + HSV_ROUND) >> HSV_SHIFT;
+        if (h < 0) {
+            h += 180;
+        }
+        return minH <= h && h <= maxH;
+    }
+
+    /**
+     * Erode or dilate <code>mask</code> in place with a square kernel of side
+     * <code>size</code>, anchored at its center as OpenCV's is. Pixels past
+     * the edge of the image are ignored, as OpenCV's default border does.
+     */
+    private void morph(int rows, int cols, int size, boolean erode) {
+        if (size <= 1) {
+            return;
+        }
+        int before = size / 2;
+        int after = size - 1 - before;
+        horizontal(mask, temp, rows, cols, before, after, erode);
+        vertical(temp, mask, rows, cols, before, after, erode);
+    }
+
+    private static void horizontal(byte[] src, byte[] dst, int rows, int cols, int before, int after,
+            boolean erode) {
+        for (int y = 0; y < rows; y++) {
+            int row = y * cols;
+            // Set pixels in the window of the first pixel of the row
+            int count = 0;
+            for (int x = 0; x <= after && x < cols; x++) {
+                if (src[row + x] != 0) {
+                    count++;
+                }
+            }
+            for (int x = 0; x < cols; x++) {
+                int width = Math.min(cols - 1, x + after) - Math.max(0, x - before) + 1;
+                dst[row + x] = (erode ? count == width : count > 0) ? SET : 0;
+                // Slide the window one pixel right
+                if (x + after + 1 < cols && src[row + x + after + 1] != 0) {
+                    count++;
+                }
+                if (x - before >= 0 && src[row + x - before] != 0) {
+                    count--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Like <code>horizontal</code>, but goes down the image a row at a time,
+     * with a count per column, rather than down each column
+     */
+    private void vertical(byte[] src, byte[] dst, int rows, int cols, int before, int after, boolean erode) {
+        int[] count = counts;
+        for (int x = 0; x < cols; x++) {
+            count[x] = 0;
+        }
+        for (int y = 0; y <= after && y < rows; y++) {
+            addRow(src, count, y * cols, cols, 1);
+        }
+        for (int y = 0; y < rows; y++) {
+            int height = Math.min(rows - 1, y + after) - Math.max(0, y - before) + 1;
+            int row = y * cols;
+            for (int x = 0; x < cols; x++) {
+                dst[row + x] = (erode ? count[x] == height : count[x] > 0) ? SET : 0;
+            }
+            if (y + after + 1 < rows) {
+                addRow(src, count, (y + after + 1) * cols, cols, 1);
+            }
+            if (y - before >= 0) {
+                addRow(src, count, (y - before) * cols, cols, -1);
+            }
+        }
+    }
+
+    private static void addRow(byte[] src, int[] count, int row, int cols, int sign) {
+        for (int x = 0; x < cols; x++) {
+            if (src[row + x] != 0) {
+                count[x] += sign;
+            }
+        }
+    }
+}
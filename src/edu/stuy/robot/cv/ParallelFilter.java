@@ -0,0 +1,150 @@
+package edu.stuy.robot.cv;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Runs the HSV threshold, erode and dilate on horizontal stripes of a frame
+ * in parallel. Each stripe is processed with <code>halo</code> extra rows
+ * above and below it, so that the erode and dilate see the same neighbours
+ * as they would in the whole frame, and only its own rows are copied into
+ * the result.
+ *
+ * With <code>n</code> threads the calling thread does one stripe itself and
+ * a pool of <code>n - 1</code> threads does the rest, so no more than
+ * <code>n</code> cores are ever busy with the filter. The pool, and a stripe
+ * per thread with its buffers, are kept for as long as the number of threads
+ * stays the same. Smaller images are split into fewer stripes, leaving the
+ * rest idle rather than rebuilding the pool.
+ *
+ * Like <code>VisionWorkspace</code>, must only be used by one thread at a
+ * time.
+ */
+class ParallelFilter {
+
+    private ForkJoinPool pool;
+    private Stripe[] stripes = new Stripe[0];
+
+    /**
+     * Binarize <code>image</code> into <code>mask</code> as the sequential
+     * filter does: <code>inRange</code> on its HSV conversion, then erode and
+     * dilate
+     *
+     * @param halo
+     * Rows of context each stripe needs: the erode kernel's reach plus the
+     * dilate kernel's
+     * @param threads
+     * Number of threads to keep for the filter
+     * @param stripeCount
+     * Number of stripes to split <code>image</code> into, no more than
+     * <code>threads</code>
+     */
+    void filter(Mat image, Mat mask, Scalar lower, Scalar upper, Mat erodeKernel, Mat dilateKernel, int halo,
+            int threads, int stripeCount) {
+        ensureThreads(threads);
+        // Allocate the result up front, so the stripes can each fill their
+        // own rows of it at the same time
+        mask.create(image.rows(), image.cols(), CvType.CV_8UC1);
+
+        int rows = image.rows();
+        for (int i = 0; i < stripeCount; i++) {
+            Stripe stripe = stripes[i];
+            stripe.image = image;
+            stripe.out = mask;
+            stripe.lower = lower;
+            stripe.upper = upper;
+            stripe.erodeKernel = erodeKernel;
+            stripe.dilateKernel = dilateKernel;
+            stripe.halo = halo;
+            stripe.firstRow = rows * i / stripeCount;
+            stripe.endRow = rows * (i + 1) / stripeCount;
+            if (i > 0) {
+                stripe.reinitialize();
+                pool.execute(stripe);
+            }
+        }
+        stripes[0].compute();
+        for (int i = 1; i < stripeCount; i++) {
+            stripes[i].join();
+        }
+    }
+
+    private void ensureThreads(int threads) {
+        if (stripes.length == threads) {
+            return;
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        if (threads > 1) {
+            pool = new ForkJoinPool(threads - 1);
+        }
+        Stripe[] old = stripes;
+        stripes = new Stripe[threads];
+        for (int i = 0; i < threads; i++) {
+            stripes[i] = i < old.length ? old[i] : new Stripe();
+        }
+        for (int i = threads; i < old.length; i++) {
+            old[i].release();
+        }
+    }
+
+    /**
+     * Stop the pool's threads and free the stripes' buffers. The filter can
+     * still be used afterwards, and starts them again.
+     */
+    void shutdown() {
+        ensureThreads(0);
+    }
+
+    private static class Stripe extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        // Owned by this stripe, and reused every frame
+        private final Mat hsv = new Mat();
+        private final Mat mask = new Mat();
+
+        // Set for each frame by filter()
+        Mat image;
+        Mat out;
+        Scalar lower;
+        Scalar upper;
+        Mat erodeKernel;
+        Mat dilateKernel;
+        int halo;
+        int firstRow;
+        int endRow;
+
+        @Override
+        protected void compute() {
+            int top = Math.max(0, firstRow - halo);
+            int bottom = Math.min(image.rows(), endRow + halo);
+            Mat in = image.rowRange(top, bottom);
+            Imgproc.cvtColor(in, hsv, Imgproc.COLOR_BGR2HSV);
+            Core.inRange(hsv, lower, upper, mask);
+            // Rows in the halo come out wrong, as the stripe's edges are not
+            // the frame's, but that never reaches the stripe's own rows
+            Imgproc.erode(mask, mask, erodeKernel);
+            Imgproc.dilate(mask, mask, dilateKernel);
+            Mat own = mask.rowRange(firstRow - top, endRow - top);
+            Mat dst = out.rowRange(firstRow, endRow);
+            own.copyTo(dst);
+            in.release();
+            own.release();
+            dst.release();
+        }
+
+        void release() {
+            hsv.release();
+            mask.release();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package edu.stuy.robot.cv;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * A binary mask stored as the runs of set pixels in each row, rather than a
+ * byte per pixel. The goal's tape covers very little of a frame, so this is
+ * far smaller than the dense mask, and erode, dilate and blob labeling on it
+ * take time in proportion to the number of runs rather than the number of
+ * pixels.
+ *
+ * Erode and dilate use square kernels anchored at their center, and treat
+ * pixels past the edge of the mask as OpenCV's default border does, so they
+ * give exactly the same mask as <code>Imgproc.erode</code> and
+ * <code>Imgproc.dilate</code>.
+ *
+ * Like <code>VisionWorkspace</code>, must only be used by one thread at a
+ * time.
+ */
+class RunMask {
+
+    int rows;
+    int cols;
+    // Run i covers columns [starts[i], ends[i]) of its row. The runs of row y
+    // are rowStart[y] to rowStart[y + 1] - 1, left to right, and never touch.
+    int[] starts = new int[64];
+    int[] ends = new int[64];
+    int[] rowStart = new int[1];
+    int count;
+
+    // Scratch space for combining rows, each long enough for one row's runs
+    private int[] accStarts = new int[0];
+    private int[] accEnds = new int[0];
+    private int[] tmpStarts = new int[0];
+    private int[] tmpEnds = new int[0];
+
+    private byte[] pixels = new byte[0];
+
+    /**
+     * Empty the mask, ready to add the runs of a <code>rows</code> by
+     * <code>cols</code> mask row by row
+     */
+    void reset(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        if (rowStart.length < rows + 1) {
+            rowStart = new int[rows + 1];
+        }
+        rowStart[0] = 0;
+        count = 0;
+    }
+
+    /**
+     * Add a run to the end of the current row. Runs must be added left to
+     * right, and must not touch.
+     */
+    void add(int start, int end) {
+        if (count == starts.length) {
+            int[] grownStarts = new int[count * 2];
+            int[] grownEnds = new int[count * 2];
+            System.arraycopy(starts, 0, grownStarts, 0, count);
+            System.arraycopy(ends, 0, grownEnds, 0, count);
+            starts = grownStarts;
+            ends = grownEnds;
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    /**
+     * Finish row <code>y</code>; following runs go in the row after it
+     */
+    void endRow(int y) {
+        rowStart[y + 1] = count;
+    }
+
+    /**
+     * Set this to the runs of <code>mask</code>, a <code>CV_8UC1</code> image
+     */
+    void encode(Mat mask) {
+        int r = mask.rows();
+        int c = mask.cols();
+        if (pixels.length < r * c) {
+            pixels = new byte[r * c];
+        }
+        mask.get(0, 0, pixels);
+        reset(r, c);
+        for (int y = 0; y < r; y++) {
+            int row = y * c;
+            int start = -1;
+            for (int x = 0; x < c; x++) {
+                boolean set = pixels[row + x] != 0;
+                if (set && start < 0) {
+                    start = x;
+                } else if (!set && start >= 0) {
+                    add(start, x);
+                    start = -1;
+                }
+            }
+            if (start >= 0) {
+                add(start, c);
+            }
+            endRow(y);
+        }
+    }
+
+    /**
+     * Draw the mask into <code>mask</code>, e.g. for the gui
+     */
+    void render(Mat mask) {
+        int n = rows * cols;
+        if (pixels.length < n) {
+            pixels = new byte[n];
+        }
+        for (int y = 0; y < rows; y++) {
+            int row = y * cols;
+            int x = 0;
+            for (int i = rowStart[y]; i < rowStart[y + 1]; i++) {
+                for (; x < starts[i]; x++) {
+                    pixels[row + x] = 0;
+                }
+                for (; x < ends[i]; x++) {
+                    pixels[row + x] = (byte) 255;
+                }
+            }
+            for (; x < cols; x++) {
+                pixels[row + x] = 0;
+            }
+        }
+        mask.create(rows, cols, CvType.CV_8UC1);
+        mask.put(0, 0, pixels);
+    }
+
+    /**
+     * Erode or dilate the mask in place with a square kernel of side
+     * <code>size</code>: horizontally into <code>scratch</code>, by moving
+     * the ends of each run, then vertically back into this, by intersecting
+     * or merging the runs of the rows under the kernel.
+     */
+    void morph(int size, boolean erode, RunMask scratch) {
+        if (size <= 1) {
+            return;
+        }
+        int before = size / 2;
+        int after = size - 1 - before;
+        ensureScratch();
+        scratch.reset(rows, cols);
+        for (int y = 0; y < rows; y++) {
+            for (int i = rowStart[y]; i < rowStart[y + 1]; i++) {
+                int start = starts[i];
+                int end = ends[i];
+                if (erode) {
+                    // A pixel survives if its whole window is set, where the
+                    // border counts as set
+                    start = start == 0 ? 0 : start + before;
+                    end = end == cols ? cols : end - after;
+                    if (start < end) {
+                        scratch.add(start, end);
+                    }
+                } else {
+                    start = Math.max(0, start - after);
+                    end = Math.min(cols, end + before);
+                    // Grown runs may now overlap the one before
+                    int last = scratch.count - 1;
+                    if (last >= scratch.rowStart[y] && start <= scratch.ends[last]) {
+                        scratch.ends[last] = Math.max(scratch.ends[last], end);
+                    } else {
+                        scratch.add(start, end);
+                    }
+                }
+            }
+            scratch.endRow(y);
+        }
+
+        reset(rows, cols);
+        for (int y = 0; y < rows; y++) {
+            int first = Math.max(0, y - before);
+            int last = Math.min(rows - 1, y + after);
+            // Start from the first row under the kernel, and combine the
+            // others into it one at a time
+            int n = 0;
+            for (int i = scratch.rowStart[first]; i < scratch.rowStart[first + 1]; i++) {
+                accStarts[n] = scratch.starts[i];
+                accEnds[n] = scratch.ends[i];
+                n++;
+            }
+            for (int row = first + 1; row <= last && (n > 0 || !erode); row++) {
+                n = erode ? intersect(n, scratch, row) : union(n, scratch, row);
+            }
+            for (int i = 0; i < n; i++) {
+                add(accStarts[i], accEnds[i]);
+            }
+            endRow(y);
+        }
+    }
+
+    private void ensureScratch() {
+        // A row has at most one run for every two columns
+        int maxRuns = cols / 2 + 1;
+        if (accStarts.length < maxRuns) {
+            accStarts = new int[maxRuns];
+            accEnds = new int[maxRuns];
+            tmpStarts = new int[maxRuns];
+            tmpEnds = new int[maxRuns];
+        }
+    }
+
+    /**
+     * Intersect the <code>n</code> runs in <code>accStarts</code> and
+     * <code>accEnds</code> with the runs of <code>row</code> of
+     * <code>other</code>
+     *
+     * @return The number of runs left
+     */
+    private int intersect(int n, RunMask other, int row) {
+        int i = 0;
+        int j = other.rowStart[row];
+        int jEnd = other.rowStart[row + 1];
+        int m = 0;
+        while (i < n && j < jEnd) {
+            int start = Math.max(accStarts[i], other.starts[j]);
+            int end = Math.min(accEnds[i], other.ends[j]);
+            if (start < end) {
+                tmpStarts[m] = start;
+                tmpEnds[m] = end;
+                m++;
+            }
+            // Move past whichever run ends first
+            if (accEnds[i] < other.ends[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        swapScratch();
+        return m;
+    }
+
+    /**
+     * Like <code>intersect</code>, but merges the runs
+     */
+    private int union(int n, RunMask other, int row) {
+        int i = 0;
+        int j = other.rowStart[row];
+        int jEnd = other.rowStart[row + 1];
+        int m = 0;
+        while (i < n || j < jEnd) {
+            int start;
+            int end;
+            // Take whichever run starts first
+            if (j >= jEnd || (i < n && accStarts[i] <= other.starts[j])) {
+                start = accStarts[i];
+                end = accEnds[i];
+                i++;
+            } else {
+                start = other.starts[j];
+                end = other.ends[j];
+                j++;
+            }
+            if (m > 0 && start <= tmpEnds[m - 1]) {
+                tmpEnds[m - 1] = Math.max(tmpEnds[m - 1], end);
+            } else {
+                tmpStarts[m] = start;
+                tmpEnds[m] = end;
+                m++;
+            }
+        }
+        swapScratch();
+        return m;
+    }
+
+    private void swapScratch() {
+        int[] t = accStarts;
+        accStarts = tmpStarts;
+        tmpStarts = t;
+        t = accEnds;
+        accEnds = tmpEnds;
+        tmpEnds = t;
+    }
+}
@@ -4,15 +4,16 @@ import static edu.stuy.robot.RobotMap.CAMERA_DIST_TO_BOT_FRONT;
 import static edu.stuy.robot.RobotMap.CAMERA_FRAME_PX_HEIGHT;
 import static edu.stuy.robot.RobotMap.CAMERA_FRAME_PX_WIDTH;
 import static edu.stuy.robot.RobotMap.CAMERA_HEIGHT_FROM_GROUND;
+import static edu.stuy.robot.RobotMap.CAMERA_RAW_YUYV;
 import static edu.stuy.robot.RobotMap.CAMERA_TILT_ANGLE;
 import static edu.stuy.robot.RobotMap.CAMERA_VIEWING_ANGLE_X;
 import static edu.stuy.robot.RobotMap.CAMERA_VIEWING_ANGLE_Y;
 import static edu.stuy.robot.RobotMap.HIGH_GOAL_HEIGHT;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
@@ -20,24 +21,36 @@ import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
+import org.opencv.core.Rect;
 import org.opencv.core.RotatedRect;
 import org.opencv.core.Scalar;
-import org.opencv.core.Size;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.videoio.Videoio;
 
 import edu.stuy.robot.cv.capture.CaptureSource;
+import edu.stuy.robot.cv.capture.CapturedFrame;
 import edu.stuy.robot.cv.capture.DeviceCaptureSource;
+import edu.stuy.robot.cv.capture.FrameGrabber;
+import edu.stuy.robot.cv.capture.FrameRecorder;
+import edu.stuy.robot.cv.gui.BooleanVariable;
 import edu.stuy.robot.cv.gui.DoubleSV;
 import edu.stuy.robot.cv.gui.IntegerSV;
 import edu.stuy.robot.cv.gui.Main;
+import edu.stuy.robot.cv.gui.VariableSet;
+import edu.stuy.robot.cv.gui.VariableSnapshot;
 import edu.stuy.robot.cv.gui.VisionModule;
+import edu.stuy.robot.cv.util.OdometrySource;
+import edu.stuy.robot.cv.util.RollingHistogram;
+import edu.stuy.robot.cv.util.StageTimers;
+import edu.stuy.robot.cv.util.StageTimers.Stage;
+import edu.stuy.robot.cv.util.VisionLog;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 public class StuyVision extends VisionModule {
 
-    // The following can be left in even in production, as the overhead
-    // of using .value() is negligible
+    // The following can be left in even in production: each frame reads
+    // them from one snapshot, taken as it starts
     public IntegerSV minH_GREEN = IntegerSV.mkColor(36, "Min Hue");
     public IntegerSV maxH_GREEN = IntegerSV.mkColor(94, "Max Hue");
 
@@ -54,36 +67,184 @@ public class StuyVision extends VisionModule {
     public DoubleSV minGoalRatio = new DoubleSV(1.1, 1.0, 10.0, "Min Goal Ratio");
     public DoubleSV maxGoalRatio = new DoubleSV(3.0, 1.0, 10.0, "Max Goal Ratio");
 
+    // Side lengths of the square kernels used to remove noise from the
+    // HSV-filtered image
+    public IntegerSV erodeSize = new IntegerSV(3, 1, 21, "Erode Size");
+    public IntegerSV dilateSize = new IntegerSV(9, 1, 21, "Dilate Size");
+
+    // Classify pixels with a precomputed BGR lookup table instead of
+    // converting every frame to HSV
+    public BooleanVariable useColorTable = new BooleanVariable(false, "Use color lookup table");
+
+    // Threshold, erode and dilate in plain Java instead of with OpenCV, which
+    // is then only used to find contours
+    public BooleanVariable useJavaFilter = new BooleanVariable(false, "Filter in Java");
+
+    // Label the blobs of the filtered image in one pass, instead of finding
+    // contours, and only fit a rotated rectangle to the largest that pass the
+    // area and bounding box thresholds
+    public BooleanVariable useBlobExtractor = new BooleanVariable(false, "Use blob extractor");
+
+    // Threshold in Java straight into runs of set pixels, and erode, dilate
+    // and label blobs on the runs, so that no dense mask is ever made. Takes
+    // precedence over the other filter and search options.
+    public BooleanVariable useRunMask = new BooleanVariable(false, "Use run-length mask");
+
+    // Only search the band of rows in which the center of the high goal can
+    // appear while the front of the robot is between the two distances, in
+    // inches, from the goal. The padding, in rows of a full-size frame, covers
+    // the goal's own height and the robot rocking.
+    public BooleanVariable useHorizonCrop = new BooleanVariable(false, "Crop to goal distances");
+    public DoubleSV minGoalDistance = new DoubleSV(36.0, 0.0, 600.0, "Min Goal Distance");
+    public DoubleSV maxGoalDistance = new DoubleSV(120.0, 0.0, 600.0, "Max Goal Distance");
+    public IntegerSV horizonPadding = new IntegerSV(30, 0, 270, "Horizon Padding");
+
+    // While the robot stays within these inches and degrees of where it was
+    // when a goal was last seen, give that reading again, corrected for the
+    // rotation, instead of processing new frames. A reading is given again
+    // for at most `maxStillReuse` seconds.
+    public BooleanVariable useStillCache = new BooleanVariable(false, "Reuse readings while still");
+    public DoubleSV stillDistance = new DoubleSV(0.5, 0.0, 12.0, "Still Distance");
+    public DoubleSV stillRotation = new DoubleSV(1.0, 0.0, 10.0, "Still Rotation");
+    public DoubleSV maxStillReuse = new DoubleSV(1.0, 0.0, 10.0, "Max Still Reuse");
+
+    // Once a goal is found, only search a padded region around it in the
+    // following frames, going back to the full frame after a miss or after
+    // `maxTrackedFrames` frames
+    public BooleanVariable useTracking = new BooleanVariable(true, "Track goal between frames");
+    public IntegerSV trackingPadding = new IntegerSV(40, 0, 180, "Tracking Padding");
+    public IntegerSV maxTrackedFrames = new IntegerSV(15, 1, 100, "Max Tracked Frames");
+
+    // Find candidate goals in a downsampled frame and only search around
+    // them at full resolution
+    public BooleanVariable usePyramidSearch = new BooleanVariable(false, "Coarse-to-fine search");
+
+    // Threshold, erode and dilate horizontal stripes of the frame on this
+    // many threads. The default leaves a core free for everything else, so on
+    // the roboRIO's two cores it is 1: no stripes.
+    public IntegerSV filterThreads = new IntegerSV(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), 1,
+            16, "Filter Threads");
+
+    // Every variable above, published as a new snapshot whenever one is set.
+    // Declared after them, so they are all set when it gathers them.
+    private final VariableSet variables = new VariableSet(this);
+    // The snapshot the current frame is processed with, and the version the
+    // values derived from the variables were last worked out for. Only used
+    // by the thread processing frames.
+    private VariableSnapshot params;
+    private long derivedVersion = -1;
+    // Rows, from the center of a full-size frame, between which the center
+    // of the goal can appear; see goalBand
+    private double goalBandTopY;
+    private double goalBandBottomY;
+
     private static final int outerUSBPort = 0;
+    // Longest processImage() will wait for the very first frame after startup
+    private static final long FIRST_FRAME_TIMEOUT_MS = 1000;
+    // How long the service thread waits for a frame before checking whether
+    // it has been stopped
+    private static final long SERVICE_FRAME_TIMEOUT_MS = 500;
+
+    // How much the coarse-to-fine search shrinks each side of the frame, and
+    // how many full-resolution pixels to add around each coarse blob
+    private static final int PYRAMID_SCALE = 2;
+    private static final int PYRAMID_CROP_PADDING = 12;
+    // Stripes thinner than this are not worth a thread, e.g. when only a
+    // tracked region is searched
+    private static final int MIN_STRIPE_ROWS = 32;
     private int cameraPort;
     private DeviceCaptureSource camera;
+    // Keeps the camera drained so processImage() never sees stale frames
+    private FrameGrabber grabber;
+
+    // The vision service: processes every frame the grabber gets on its own
+    // thread and publishes the result in `latestResult`
+    private Thread serviceThread;
+    private volatile boolean serviceRunning;
+    private volatile boolean saveRequested;
+    private final AtomicReference<VisionResult> latestResult = new AtomicReference<VisionResult>();
+    // Held while a frame is taken from the grabber and processed, since the
+    // grabber has a single-reader contract and the workspace is not
+    // thread-safe
+    private final Object processingLock = new Object();
+
+    // Binary log of every reading; see VisionLogDecoder. At 96 bytes a
+    // record, four 4MB files hold over 1.5 hours of frames at 30fps.
+    private static final String LOG_PATH = "visionlog";
+    private static final int LOG_RING_CAPACITY = 256;
+    private static final long LOG_FILE_BYTES = 4 * 1024 * 1024;
+    private static final int LOG_FILES = 4;
+    private VisionLog log;
+
+    // Raw frames are about 300KB each, so a 64MB segment holds about 7
+    // seconds at 30fps, and 32 of them a whole match
+    private static final int RECORDING_SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final int RECORDING_MAX_SEGMENTS = 32;
+    private volatile FrameRecorder recorder;
+    private volatile OdometrySource odometry;
+    private final AtomicReference<VisionBenchmark> benchmark = new AtomicReference<VisionBenchmark>();
+
+    // Intermediate buffers reused across frames
+    private final VisionWorkspace workspace = new VisionWorkspace();
+    private final ColorLookupTable colorTable = new ColorLookupTable();
+    private final GoalTracker tracker = new GoalTracker();
+    private final ParallelFilter parallelFilter = new ParallelFilter();
+    private final JavaFilter javaFilter = new JavaFilter();
+    private final BlobExtractor blobExtractor = new BlobExtractor();
+    // For raw YUV frames from the camera
+    private final ColorLookupTable yuvColorTable = new ColorLookupTable(true);
+    private final YuvConverter yuvConverter = new YuvConverter();
 
-    private static PrintWriter logWriter;
+    // The last processed result with a goal, and where the robot was when its
+    // frame was captured. Guarded by processingLock.
+    private VisionResult stillResult;
+    private double stillHeading;
+    private double stillLeftEncoder;
+    private double stillRightEncoder;
+    private volatile long framesReused;
 
-    // Reused across processImage() calls
-    private Mat rawFrame;
-    private Mat resizedFrame;
+    // Time spent in each step of the pipeline, always on
+    private final StageTimers timers = new StageTimers();
+    // Put the stage times on SmartDashboard about once a second
+    private static final int STAGE_TIMES_PUBLISH_INTERVAL = 30;
+    private int framesSinceStageTimesPublished;
 
     public StuyVision() {
+        this(true);
+    }
+
+    /**
+     * @param useCamera
+     * Whether to open the camera and start grabbing frames from it. Pass
+     * <code>false</code> when frames are supplied by someone else, e.g. the
+     * GUI's own <code>CaptureSource</code>.
+     */
+    public StuyVision(boolean useCamera) {
         try {
             // Ensure native libraries are loaded
             loadOpenCV();
-            // Assume the camera is plugged into port `outerUSBPort`
-            cameraPort = outerUSBPort;
-            initializeCamera();
-            rawFrame = new Mat();
-            resizedFrame = new Mat();
+            if (useCamera) {
+                // Assume the camera is plugged into port `outerUSBPort`
+                cameraPort = outerUSBPort;
+                initializeCamera();
+            }
         } catch (Exception e) {
             System.out.println("Failed to create camera at " + cameraPort + ". Error was: " + e);
         }
-        try {
-            logWriter = new PrintWriter("logs.txt");
-        } catch (Exception e) {
+        if (useCamera) {
+            log = new VisionLog(LOG_PATH, LOG_RING_CAPACITY, LOG_FILE_BYTES, LOG_FILES);
+            log.start();
         }
     }
 
     public static void loadOpenCV() {
         // Load opencv native library
+        String override = System.getProperty("opencv.library");
+        if (override != null) {
+            // E.g. for the benchmarks, run on a development machine
+            System.load(override);
+            return;
+        }
         String dir = StuyVision.class.getClassLoader().getResource("").getPath();
         if (System.getProperty("os.name").toLowerCase().contains("windows")) {
             System.load(dir.substring(1).replaceAll("\\%20", " ")
@@ -105,6 +266,11 @@ public class StuyVision extends VisionModule {
         camera = new DeviceCaptureSource(cameraPort);
         System.out.println("Made camera");
         camera.capture.set(Videoio.CV_CAP_PROP_BUFFERSIZE, 2);
+        if (CAMERA_RAW_YUYV && !camera.setRawYuyv(true)) {
+            System.out.println("Camera would not give raw YUYV frames; using BGR");
+        }
+        grabber = new FrameGrabber(camera);
+        grabber.start();
     }
 
     /**
@@ -117,48 +283,116 @@ public class StuyVision extends VisionModule {
      */
     private boolean aspectRatioThreshold(double height, double width) {
         double ratio = width / height;
-        return (minGoalRatio.value() < ratio && ratio < maxGoalRatio.value())
-                || (1 / maxGoalRatio.value() < ratio && ratio < 1 / minGoalRatio.value());
+        return (params.get(minGoalRatio) < ratio && ratio < params.get(maxGoalRatio))
+                || (1 / params.get(maxGoalRatio) < ratio && ratio < 1 / params.get(minGoalRatio));
     }
 
-    private double[] getLargestGoal(Mat originalFrame, Mat filteredImage, Main app) {
-        boolean withGui = app != null;
-        Mat drawn = null;
-        if (withGui) {
-            drawn = originalFrame.clone();
+    /**
+     * Find the largest contour in <code>filteredImage</code> that could be a
+     * goal.
+     *
+     * @param offset
+     * Where the top-left corner of <code>filteredImage</code> lies in the
+     * full frame. The returned rectangle is in full-frame coordinates.
+     * @param drawn
+     * (Optional: pass <code>null</code> to ignore) A copy of the frame to draw
+     * every candidate goal on
+     * @return The largest goal, or <code>null</code> if none was found
+     */
+    private GoalCandidate findLargestGoal(Mat filteredImage, Point offset, Mat drawn) {
+        if (params.get(useBlobExtractor) || params.get(useRunMask)) {
+            return findLargestBlob(filteredImage, offset, drawn);
         }
-
-        ArrayList<MatOfPoint> contours = new ArrayList<MatOfPoint>();
-        Imgproc.findContours(filteredImage, contours, new Mat(), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+        long t = System.nanoTime();
+        ArrayList<MatOfPoint> contours = workspace.contours;
+        Imgproc.findContours(filteredImage, contours, workspace.hierarchy, Imgproc.RETR_EXTERNAL,
+                Imgproc.CHAIN_APPROX_SIMPLE, offset);
+        t = timers.add(Stage.CONTOURS, t);
         double largestArea = 0.0;
         RotatedRect largestRect = null;
 
         for (int i = 0; i < contours.size(); i++) {
             double currArea = Imgproc.contourArea(contours.get(i));
-            if (currArea < minGoalArea.value() || currArea > maxGoalArea.value()) {
+            if (currArea < params.get(minGoalArea) || currArea > params.get(maxGoalArea)) {
                 continue;
             }
-            MatOfPoint2f tmp = new MatOfPoint2f();
+            MatOfPoint2f tmp = workspace.contour2f;
             contours.get(i).convertTo(tmp, CvType.CV_32FC1);
             RotatedRect r = Imgproc.minAreaRect(tmp);
             if (!aspectRatioThreshold(r.size.height, r.size.width)) {
                 continue;
             }
-            if (withGui) {
-                Point[] points = new Point[4];
-                r.points(points);
-                for (int j = 0; j < points.length; j++) {
-                    Imgproc.line(drawn, points[j], points[(j + 1) % 4], new Scalar(0, 255, 0));
-                }
+            if (drawn != null) {
+                drawCandidate(drawn, r);
             }
             if (currArea > largestArea) {
                 largestArea = currArea;
                 largestRect = r;
             }
         }
+        workspace.releaseContours();
+        timers.add(Stage.GOAL_FIT, t);
+        return largestRect == null ? null : new GoalCandidate(largestRect, largestArea);
+    }
 
-        if (largestRect == null) {
-            if (withGui) {
+    /**
+     * Like <code>findLargestGoal</code>, but with blobs instead of contours.
+     * Blobs are rejected on their pixel count and bounding box, which need no
+     * fitting, and a rotated rectangle is only fitted to the largest blob
+     * left, then the next largest if its rectangle has the wrong aspect
+     * ratio, and so on.
+     */
+    private GoalCandidate findLargestBlob(Mat filteredImage, Point offset, Mat drawn) {
+        long t = System.nanoTime();
+        if (params.get(useRunMask)) {
+            // filterGoalColor left the runs in the workspace, and never
+            // filled in filteredImage
+            blobExtractor.extract(workspace.runs);
+        } else {
+            blobExtractor.extract(filteredImage);
+        }
+        t = timers.add(Stage.CONTOURS, t);
+        // A rectangle around a blob is at least half as elongated as the
+        // blob's bounding box, so blobs beyond twice the largest goal ratio
+        // can never pass
+        int candidates = blobExtractor.select(params.get(minGoalArea), params.get(maxGoalArea),
+                2 * params.get(maxGoalRatio));
+
+        GoalCandidate largest = null;
+        for (int i = 0; i < candidates; i++) {
+            BlobExtractor.Blob blob = blobExtractor.get(i);
+            RotatedRect r = blobExtractor.fitRect(blob, offset.x, offset.y);
+            if (!aspectRatioThreshold(r.size.height, r.size.width)) {
+                continue;
+            }
+            if (largest == null) {
+                largest = new GoalCandidate(r, blob.contourArea);
+            }
+            if (drawn == null) {
+                break;
+            }
+            // Carry on only to draw every candidate for the gui
+            drawCandidate(drawn, r);
+        }
+        timers.add(Stage.GOAL_FIT, t);
+        return largest;
+    }
+
+    private static void drawCandidate(Mat drawn, RotatedRect r) {
+        Point[] points = new Point[4];
+        r.points(points);
+        for (int j = 0; j < points.length; j++) {
+            Imgproc.line(drawn, points[j], points[(j + 1) % 4], new Scalar(0, 255, 0));
+        }
+    }
+
+    /**
+     * Turn the goal found in a frame into the reading returned by
+     * <code>hsvThresholding</code>, and post it to the gui if there is one
+     */
+    private double[] goalReading(Mat originalFrame, RotatedRect goal, Mat drawn, Main app) {
+        if (goal == null) {
+            if (app != null) {
                 // Post the unchanged image anyway for visual consistency
                 app.postImage(originalFrame, "Goals", this);
             }
@@ -167,23 +401,48 @@ public class StuyVision extends VisionModule {
         }
 
         double[] vector = new double[3];
-        vector[0] = largestRect.center.x - originalFrame.width() / 2.0;
-        vector[1] = largestRect.center.y - originalFrame.height() / 2.0;
-        vector[2] = largestRect.angle;
+        vector[0] = goal.center.x - originalFrame.width() / 2.0;
+        vector[1] = goal.center.y - originalFrame.height() / 2.0;
+        vector[2] = goal.angle;
 
-        if (withGui) {
-            Imgproc.circle(drawn, largestRect.center, 1, new Scalar(0, 0, 255), 2);
+        if (app != null) {
+            Imgproc.circle(drawn, goal.center, 1, new Scalar(0, 0, 255), 2);
             double w = drawn.width();
             double h = drawn.height();
-            Imgproc.line(drawn, new Point(w / 2, h / 2), largestRect.center, new Scalar(0, 0, 255));
+            Imgproc.line(drawn, new Point(w / 2, h / 2), goal.center, new Scalar(0, 0, 255));
             app.postImage(drawn, "Goals", this);
         }
 
         return vector;
     }
 
+    private double[] getLargestGoal(Mat originalFrame, Mat filteredImage, Main app) {
+        Mat drawn = app == null ? null : originalFrame.clone();
+        GoalCandidate goal = findLargestGoal(filteredImage, workspace.origin, drawn);
+        return goalReading(originalFrame, goal == null ? null : goal.rect, drawn, app);
+    }
+
     public double[] getLargestGoal(Mat orig, Mat f) {
-        return getLargestGoal(orig, f, null);
+        beginFrame();
+        if (params.get(useRunMask)) {
+            workspace.runs.encode(f);
+        }
+        double[] reading = getLargestGoal(orig, f, null);
+        timers.endFrame();
+        return reading;
+    }
+
+    /**
+     * Binarize <code>image</code> into <code>greenFiltered</code> as
+     * <code>hsvThresholding</code> does when searching the full frame
+     */
+    public void filterGoalColor(Mat image, Mat greenFiltered) {
+        beginFrame();
+        filterGoalColor(image, greenFiltered, params.get(erodeSize), params.get(dilateSize), null);
+        if (params.get(useRunMask)) {
+            workspace.runs.render(greenFiltered);
+        }
+        timers.endFrame();
     }
 
     /**
@@ -207,55 +466,338 @@ public class StuyVision extends VisionModule {
      * tilted </p>
      */
     public double[] hsvThresholding(Mat frame, Main app) {
-        boolean withGui = app != null;
+        beginFrame();
+        return readGoal(frame, app);
+    }
 
-        // Convert BGR camera image to HSV for processing
-        Mat hsv = new Mat();
-        Imgproc.cvtColor(frame, hsv, Imgproc.COLOR_BGR2HSV);
+    /**
+     * Take the snapshot of the variables the frame is to be processed with,
+     * and work out again whatever is derived from them if they have changed
+     * since the last frame
+     */
+    private void beginFrame() {
+        params = variables.snapshot();
+        if (params.version == derivedVersion) {
+            return;
+        }
+        derivedVersion = params.version;
+        setHsvBounds();
 
-        // Split HSV channels and process each channel
-        ArrayList<Mat> greenFilterChannels = new ArrayList<Mat>();
-        Core.split(hsv, greenFilterChannels);
-        Core.inRange(greenFilterChannels.get(0), new Scalar(minH_GREEN.value()), new Scalar(maxH_GREEN.value()),
-                greenFilterChannels.get(0));
-        if (withGui) {
-            app.postImage(greenFilterChannels.get(0), "After H", this);
+        // Start a background rebuild of each lookup table in use if a bound
+        // has changed; until it is done, the previous table keeps being used
+        if (camera != null && camera.isYuv()) {
+            yuvColorTable.setBounds(params.get(minH_GREEN), params.get(maxH_GREEN), params.get(minS_GREEN),
+                    params.get(maxS_GREEN), params.get(minV_GREEN), params.get(maxV_GREEN));
         }
-        Core.inRange(greenFilterChannels.get(1), new Scalar(minS_GREEN.value()), new Scalar(maxS_GREEN.value()),
-                greenFilterChannels.get(1));
-        if (withGui) {
-            app.postImage(greenFilterChannels.get(1), "After S", this);
+        if (params.get(useColorTable)) {
+            colorTable.setBounds(params.get(minH_GREEN), params.get(maxH_GREEN), params.get(minS_GREEN),
+                    params.get(maxS_GREEN), params.get(minV_GREEN), params.get(maxV_GREEN));
         }
-        Core.inRange(greenFilterChannels.get(2), new Scalar(minV_GREEN.value()), new Scalar(maxV_GREEN.value()),
-                greenFilterChannels.get(2));
-        if (withGui) {
-            app.postImage(greenFilterChannels.get(2), "After V", this);
+
+        // The closer the goal, the higher up the frame it is
+        goalBandTopY = findFrameYAtCameraDistance(params.get(minGoalDistance) + CAMERA_DIST_TO_BOT_FRONT);
+        goalBandBottomY = findFrameYAtCameraDistance(params.get(maxGoalDistance) + CAMERA_DIST_TO_BOT_FRONT);
+    }
+
+    /**
+     * <code>hsvThresholding</code>, with the snapshot already taken
+     */
+    private double[] readGoal(Mat frame, Main app) {
+        long start = System.nanoTime();
+        Mat drawn = app == null ? null : frame.clone();
+
+        GoalCandidate goal = null;
+        Rect region = null;
+        if (params.get(useTracking)) {
+            region = tracker.searchRegion(frame.width(), frame.height(), params.get(trackingPadding),
+                    params.get(maxTrackedFrames));
+        }
+        if (region != null) {
+            // Only look near where the goal was last seen
+            goal = findLargestGoalIn(frame, region, drawn, app);
+        }
+        boolean searchedFullFrame = goal == null;
+        if (goal == null) {
+            // Either not tracking, or the goal was lost: search the whole frame
+            Rect band = params.get(useHorizonCrop) ? goalBand(frame) : null;
+            if (params.get(usePyramidSearch)) {
+                Rect area = band;
+                if (area == null) {
+                    area = workspace.searchArea;
+                    area.x = 0;
+                    area.y = 0;
+                    area.width = frame.width();
+                    area.height = frame.height();
+                }
+                goal = findLargestGoalCoarseToFine(frame, area, drawn, app);
+            } else if (band != null) {
+                goal = findLargestGoalIn(frame, band, drawn, app);
+            } else {
+                filterGoalColor(frame, workspace.mask, params.get(erodeSize), params.get(dilateSize), app);
+                goal = findLargestGoal(workspace.mask, workspace.origin, drawn);
+            }
+        }
+        RotatedRect goalRect = goal == null ? null : goal.rect;
+        tracker.update(goalRect, searchedFullFrame);
+
+        double[] reading = goalReading(frame, goalRect, drawn, app);
+        timers.add(Stage.TOTAL, start);
+        timers.endFrame();
+        return reading;
+    }
+
+    /**
+     * Filter and search only the part of <code>frame</code> inside
+     * <code>region</code>
+     */
+    private GoalCandidate findLargestGoalIn(Mat frame, Rect region, Mat drawn, Main app) {
+        Mat area = frame.submat(region);
+        filterGoalColor(area, workspace.mask, params.get(erodeSize), params.get(dilateSize), app);
+        area.release();
+        return findLargestGoal(workspace.mask, new Point(region.x, region.y), drawn);
+    }
+
+    /**
+     * Search <code>area</code> of the frame, which may be all of it, in two
+     * steps: find blobs that might be goals in a downsampled copy of it, then
+     * search full-resolution crops around just those blobs. This gives the
+     * same goal as searching the whole area, while most of the filtering is
+     * done on a quarter of the pixels.
+     */
+    private GoalCandidate findLargestGoalCoarseToFine(Mat frame, Rect area, Mat drawn, Main app) {
+        int scale = PYRAMID_SCALE;
+        Mat coarse = workspace.coarse;
+        long t = System.nanoTime();
+        Mat searched = frame.submat(area);
+        Imgproc.resize(searched, coarse, workspace.autoSize, 1.0 / scale, 1.0 / scale, Imgproc.INTER_AREA);
+        searched.release();
+        timers.add(Stage.RESIZE, t);
+        // Shrink the kernels along with the image
+        filterGoalColor(coarse, workspace.coarseMask, Math.max(1, params.get(erodeSize) / scale),
+                Math.max(1, (params.get(dilateSize) + scale - 1) / scale), null);
+        if (app != null) {
+            if (params.get(useRunMask)) {
+                workspace.runs.render(workspace.coarseMask);
+            }
+            app.postImage(workspace.coarseMask, "Coarse search", this);
         }
 
-        // Merge filtered H, S and V back into one binarized image
-        Mat greenFiltered = new Mat();
-        Core.bitwise_and(greenFilterChannels.get(0), greenFilterChannels.get(1), greenFiltered);
-        Core.bitwise_and(greenFilterChannels.get(2), greenFiltered, greenFiltered);
+        // Be lenient with the area thresholds, since a blob's area changes
+        // when it is downsampled; the full-resolution search is exact
+        double areaScale = scale * scale;
+        double minArea = params.get(minGoalArea) / 2;
+        double maxArea = params.get(maxGoalArea) * 2;
+        ArrayList<Rect> regions = workspace.candidateRegions;
+        regions.clear();
+        t = System.nanoTime();
+        if (params.get(useBlobExtractor) || params.get(useRunMask)) {
+            if (params.get(useRunMask)) {
+                blobExtractor.extract(workspace.runs);
+            } else {
+                blobExtractor.extract(workspace.coarseMask);
+            }
+            timers.add(Stage.CONTOURS, t);
+            int candidates = blobExtractor.select(minArea / areaScale, maxArea / areaScale, Double.MAX_VALUE);
+            for (int i = 0; i < candidates; i++) {
+                BlobExtractor.Blob blob = blobExtractor.get(i);
+                regions.add(cropAround(area, blob.minX, blob.minY, blob.width(), blob.height(), scale));
+            }
+        } else {
+            ArrayList<MatOfPoint> contours = workspace.contours;
+            Imgproc.findContours(workspace.coarseMask, contours, workspace.hierarchy, Imgproc.RETR_EXTERNAL,
+                    Imgproc.CHAIN_APPROX_SIMPLE);
+            timers.add(Stage.CONTOURS, t);
+            for (int i = 0; i < contours.size(); i++) {
+                double blobArea = Imgproc.contourArea(contours.get(i)) * areaScale;
+                if (blobArea < minArea || blobArea > maxArea) {
+                    continue;
+                }
+                Rect blob = Imgproc.boundingRect(contours.get(i));
+                regions.add(cropAround(area, blob.x, blob.y, blob.width, blob.height, scale));
+            }
+            workspace.releaseContours();
+        }
+
+        GoalCandidate largest = null;
+        for (int i = 0; i < regions.size(); i++) {
+            largest = GoalCandidate.larger(largest, findLargestGoalIn(frame, regions.get(i), drawn, app));
+        }
+        return largest;
+    }
+
+    /**
+     * @return The full-resolution region of the frame to search for a blob
+     * found at the given bounding box in a copy of <code>area</code> shrunk
+     * by <code>scale</code>
+     */
+    private static Rect cropAround(Rect area, int x, int y, int width, int height, int scale) {
+        int left = Math.max(area.x, area.x + x * scale - PYRAMID_CROP_PADDING);
+        int top = Math.max(area.y, area.y + y * scale - PYRAMID_CROP_PADDING);
+        int right = Math.min(area.x + area.width, area.x + (x + width) * scale + PYRAMID_CROP_PADDING);
+        int bottom = Math.min(area.y + area.height, area.y + (y + height) * scale + PYRAMID_CROP_PADDING);
+        return new Rect(left, top, right - left, bottom - top);
+    }
+
+    /**
+     * @return The rows of <code>frame</code> in which the goal can appear
+     * between <code>minGoalDistance</code> and <code>maxGoalDistance</code>,
+     * or <code>null</code> if that is the whole frame, or if none of those
+     * distances are in view
+     */
+    private Rect goalBand(Mat frame) {
+        int height = frame.height();
+        // The geometry is worked out for a full-size frame
+        double rowScale = (double) height / CAMERA_FRAME_PX_HEIGHT;
+        double padding = params.get(horizonPadding) * rowScale;
+        double topY = goalBandTopY * rowScale;
+        double bottomY = goalBandBottomY * rowScale;
+        int top = Math.max(0, (int) Math.floor(topY + height / 2.0 - padding));
+        int bottom = Math.min(height, (int) Math.ceil(bottomY + height / 2.0 + padding));
+        if (top >= bottom || (top == 0 && bottom == height)) {
+            return null;
+        }
+        Rect band = workspace.searchArea;
+        band.x = 0;
+        band.y = top;
+        band.width = frame.width();
+        band.height = bottom - top;
+        return band;
+    }
+
+    private void setHsvBounds() {
+        Scalar lower = workspace.lowerHsv;
+        Scalar upper = workspace.upperHsv;
+        lower.val[0] = params.get(minH_GREEN);
+        lower.val[1] = params.get(minS_GREEN);
+        lower.val[2] = params.get(minV_GREEN);
+        upper.val[0] = params.get(maxH_GREEN);
+        upper.val[1] = params.get(maxS_GREEN);
+        upper.val[2] = params.get(maxV_GREEN);
+    }
+
+    /**
+     * Binarize <code>image</code> into <code>greenFiltered</code>, keeping only
+     * goal-colored pixels, and remove noise from the result
+     *
+     * @param erode
+     * Side length of the kernel to erode with
+     * @param dilate
+     * Side length of the kernel to dilate with
+     */
+    private void filterGoalColor(Mat image, Mat greenFiltered, int erode, int dilate, Main app) {
+        boolean withGui = app != null;
+
+        long t = System.nanoTime();
+        boolean classified = false;
+        if (workspace.yuvInput) {
+            // Raw camera frames: classify them as they are once the YUV table
+            // is ready, and until then convert them for the usual filters
+            classified = yuvColorTable.classify(image, greenFiltered);
+            if (classified) {
+                t = timers.add(Stage.THRESHOLD, t);
+            } else {
+                yuvConverter.toBgr(image, workspace.bgr);
+                image = workspace.bgr;
+                t = timers.add(Stage.CONVERT, t);
+            }
+        }
+        if (!classified && params.get(useRunMask)) {
+            javaFilter.filterRuns(image, workspace.runs, workspace.runScratch, params.get(minH_GREEN),
+                    params.get(maxH_GREEN), params.get(minS_GREEN), params.get(maxS_GREEN), params.get(minV_GREEN),
+                    params.get(maxV_GREEN), erode, dilate);
+            timers.add(Stage.JAVA_FILTER, t);
+            if (withGui) {
+                workspace.runs.render(greenFiltered);
+                app.postImage(greenFiltered, "After erode/dilate", this);
+            }
+            return;
+        }
+        if (!classified && params.get(useColorTable)) {
+            // The table is rebuilt in the background when a bound changes,
+            // and until then the previous one keeps being used
+            classified = colorTable.classify(image, greenFiltered);
+            if (classified) {
+                timers.add(Stage.THRESHOLD, t);
+            }
+        }
+        if (!classified && params.get(useJavaFilter)) {
+            javaFilter.filter(image, greenFiltered, params.get(minH_GREEN), params.get(maxH_GREEN),
+                    params.get(minS_GREEN), params.get(maxS_GREEN), params.get(minV_GREEN), params.get(maxV_GREEN),
+                    erode, dilate, withGui ? workspace.hsv : null);
+            timers.add(Stage.JAVA_FILTER, t);
+            if (withGui) {
+                // The mask before erode/dilate, which the filter left in the
+                // otherwise unused HSV buffer
+                app.postImage(workspace.hsv, "After filtering H, S, V", this);
+                app.postImage(greenFiltered, "After erode/dilate", this);
+            }
+            return;
+        }
+        // The per-channel and thresholded images the gui shows for tuning
+        // need the whole HSV image, which the stripes never put together, so
+        // with a gui the frame is always filtered in one piece
+        int threads = params.get(filterThreads);
+        int stripes = withGui ? 1 : Math.min(threads, image.rows() / MIN_STRIPE_ROWS);
+        if (!classified && stripes > 1) {
+            parallelFilter.filter(image, greenFiltered, workspace.lowerHsv, workspace.upperHsv,
+                    workspace.kernel(erode), workspace.kernel(dilate), erode / 2 + dilate / 2, threads, stripes);
+            timers.add(Stage.PARALLEL_FILTER, t);
+            if (withGui) {
+                app.postImage(greenFiltered, "After erode/dilate", this);
+            }
+            return;
+        }
+        if (!classified) {
+            // Convert BGR camera image to HSV for processing
+            Mat hsv = workspace.hsv;
+            Imgproc.cvtColor(image, hsv, Imgproc.COLOR_BGR2HSV);
+            t = timers.add(Stage.CONVERT, t);
+
+            if (withGui) {
+                postChannelImages(hsv, app);
+            }
+
+            // Filter H, S and V in a single pass over the HSV image, straight
+            // into one binarized image
+            t = System.nanoTime();
+            Core.inRange(hsv, workspace.lowerHsv, workspace.upperHsv, greenFiltered);
+            timers.add(Stage.THRESHOLD, t);
+        }
         if (withGui) {
             app.postImage(greenFiltered, "After filtering H, S, V", this);
         }
 
-        // Erode and dilate to remove noise
-        Mat erodeKernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3));
-        Mat dilateKernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(9, 9));
-        Imgproc.erode(greenFiltered, greenFiltered, erodeKernel);
-        Imgproc.dilate(greenFiltered, greenFiltered, dilateKernel);
+        // Erode and dilate to remove noise. The kernels are cached by the
+        // workspace, one for each size.
+        t = System.nanoTime();
+        Imgproc.erode(greenFiltered, greenFiltered, workspace.kernel(erode));
+        Imgproc.dilate(greenFiltered, greenFiltered, workspace.kernel(dilate));
+        timers.add(Stage.MORPHOLOGY, t);
         if (withGui) {
             app.postImage(greenFiltered, "After erode/dilate", this);
         }
-
-        double[] output = getLargestGoal(frame, greenFiltered, app);
-        try {
-            logWriter.println(new Report(output));
-            logWriter.flush();
-        } catch (Exception e) {
+        if (params.get(useRunMask)) {
+            // Only reached when a YUV frame was classified by table, which
+            // gives a dense mask
+            workspace.runs.encode(greenFiltered);
         }
-        return output;
+    }
+
+    /**
+     * Post the result of filtering each of H, S and V on its own. These are
+     * only useful for tuning, so they are not computed without a gui.
+     */
+    private void postChannelImages(Mat hsv, Main app) {
+        Mat[] channels = workspace.channels;
+        Core.extractChannel(hsv, channels[0], 0);
+        Core.inRange(channels[0], new Scalar(params.get(minH_GREEN)), new Scalar(params.get(maxH_GREEN)), channels[0]);
+        app.postImage(channels[0], "After H", this);
+        Core.extractChannel(hsv, channels[1], 1);
+        Core.inRange(channels[1], new Scalar(params.get(minS_GREEN)), new Scalar(params.get(maxS_GREEN)), channels[1]);
+        app.postImage(channels[1], "After S", this);
+        Core.extractChannel(hsv, channels[2], 2);
+        Core.inRange(channels[2], new Scalar(params.get(minV_GREEN)), new Scalar(params.get(maxV_GREEN)), channels[2]);
+        app.postImage(channels[2], "After V", this);
     }
 
     public double[] hsvThresholding(Mat frame) {
@@ -263,55 +805,368 @@ public class StuyVision extends VisionModule {
     }
 
     public double[] processImage(boolean save) {
-        if (camera == null) {
+        if (grabber == null) {
             System.out.println("Camera object is uninitialized or frame not taken!");
             return null;
         }
-        // To prevent buffer repeat frames from being used:
-        for (int i = 0; i < 5; i++) {
-            camera.readFrame(rawFrame);
+        synchronized (processingLock) {
+            // The grabber thread keeps the camera drained, so its newest
+            // frame is already up to date
+            CapturedFrame captured = grabber.latest();
+            if (captured == null) {
+                try {
+                    captured = grabber.waitForFrameAfter(0, FIRST_FRAME_TIMEOUT_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (captured == null) {
+                System.out.println("FRAME WAS NULL");
+                return null;
+            }
+            return resultFor(captured, save).getReading();
+        }
+    }
+
+    public double[] processImage() {
+        return processImage(false);
+    }
+
+    /**
+     * Start processing every frame from the camera on a separate thread. The
+     * results are read with <code>getLatestResult</code> and
+     * <code>getResultAfter</code>, which never block.
+     */
+    public synchronized void startService() {
+        if (grabber == null) {
+            System.out.println("Camera object is uninitialized, not starting vision service");
+            return;
+        }
+        if (serviceThread != null) {
+            return;
         }
-        // Now read and resize updated frame:
-        Mat frame = camera.readSized(rawFrame, resizedFrame);
-        System.out.println("Got frame from camera");
-        if (frame == null) {
-            System.out.println("FRAME WAS NULL");
+        serviceRunning = true;
+        serviceThread = new Thread(this::runService, "Vision Service");
+        serviceThread.setDaemon(true);
+        serviceThread.start();
+    }
+
+    public synchronized void stopService() {
+        serviceRunning = false;
+        if (serviceThread != null) {
+            serviceThread.interrupt();
+            serviceThread = null;
+        }
+    }
+
+    private void runService() {
+        long lastSequence = 0;
+        while (serviceRunning) {
+            try {
+                // Wait outside the lock so processImage() callers are not
+                // held up by an idle camera
+                if (!grabber.awaitFrameAfter(lastSequence, SERVICE_FRAME_TIMEOUT_MS)) {
+                    continue;
+                }
+                synchronized (processingLock) {
+                    CapturedFrame captured = grabber.latest();
+                    lastSequence = captured.getSequence();
+                    boolean save = saveRequested;
+                    saveRequested = false;
+                    resultFor(captured, save);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                // Keep the service alive through a bad frame
+                System.out.println("Error in vision service:");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Publish a result for a frame from the grabber: the reading of the last
+     * goal seen, if the robot has been still since, and otherwise the result
+     * of processing the frame. Must be called with
+     * <code>processingLock</code> held.
+     */
+    private VisionResult resultFor(CapturedFrame captured, boolean save) {
+        beginFrame();
+        if (!save && params.get(useStillCache)) {
+            VisionResult reused = reuseStillResult(captured);
+            if (reused != null) {
+                publish(reused);
+                framesReused++;
+                return reused;
+            }
+        }
+        return processFrame(captured, save);
+    }
+
+    /**
+     * @return The last goal reading, as it would be seen in
+     * <code>captured</code>, or <code>null</code> if the robot has moved too
+     * far since its frame, or it is too old
+     */
+    private VisionResult reuseStillResult(CapturedFrame captured) {
+        OdometrySource odo = odometry;
+        VisionResult last = stillResult;
+        if (odo == null || last == null
+                || captured.getCaptureTime() - last.getCaptureTime() > params.get(maxStillReuse)) {
+            return null;
+        }
+        double turned = odo.getHeadingAt(captured.getCaptureTime()) - stillHeading;
+        if (Math.abs(turned) > params.get(stillRotation)
+                || Math.abs(odo.getLeftEncoder() - stillLeftEncoder) > params.get(stillDistance)
+                || Math.abs(odo.getRightEncoder() - stillRightEncoder) > params.get(stillDistance)) {
             return null;
         }
-        double[] result = hsvThresholding(frame);
+        // Turning right by some angle moves the goal left in the frame by
+        // the same angle
+        double[] reading = last.getReading();
+        reading[0] -= turned * CAMERA_FRAME_PX_WIDTH / CAMERA_VIEWING_ANGLE_X;
+        return new VisionResult(reading, captured.getCaptureTime(), captured.getSequence());
+    }
+
+    /**
+     * Process a frame from the grabber and publish the result. Must be called
+     * with <code>processingLock</code> held.
+     */
+    private VisionResult processFrame(CapturedFrame captured, boolean save) {
+        Mat frame = captured.mat;
+        // Resizing was done by the grabber, but counts towards this frame
+        timers.addNanos(Stage.RESIZE, captured.getResizeNanos());
+        long start = System.nanoTime();
+        workspace.yuvInput = camera != null && camera.isYuv();
+        double[] reading = readGoal(frame, null);
+        workspace.yuvInput = false;
+        long processed = System.nanoTime();
+        if (log != null) {
+            log.record(captured.getCaptureTime(), captured.getSequence(), reading, (processed - start) / 1e6,
+                    timers);
+        }
+        if (++framesSinceStageTimesPublished >= STAGE_TIMES_PUBLISH_INTERVAL) {
+            framesSinceStageTimesPublished = 0;
+            publishStageTimes();
+        }
+        VisionResult result = new VisionResult(reading, captured.getCaptureTime(), captured.getSequence());
+        publish(result);
+        OdometrySource odo = odometry;
+        if (reading != null && odo != null) {
+            stillResult = result;
+            stillHeading = odo.getHeadingAt(captured.getCaptureTime());
+            stillLeftEncoder = odo.getLeftEncoder();
+            stillRightEncoder = odo.getRightEncoder();
+        } else {
+            stillResult = null;
+        }
+        // Copy the frame into the recording only once its result is out, so
+        // recording does not add to the latency of every frame
+        FrameRecorder rec = recorder;
+        if (rec != null) {
+            Mat recorded = frame;
+            if (camera != null && camera.isYuv()) {
+                // Recordings are played back as BGR, like any other source
+                yuvConverter.toBgr(frame, workspace.bgr);
+                recorded = workspace.bgr;
+            }
+            if (!rec.record(recorded, captured.getCaptureTime(), captured.getSequence(), odometry)) {
+                // Out of space
+                recorder = null;
+            }
+        }
+        VisionBenchmark bench = benchmark.get();
+        if (bench != null) {
+            long captureNanos = captured.getCaptureNanos();
+            bench.addFrame(captured.getReadNanos(), start - captureNanos, captured.getResizeNanos(),
+                    processed - start, System.nanoTime() - captureNanos);
+            if (bench.isDone()) {
+                // Unless startBenchmark has already replaced it
+                benchmark.compareAndSet(bench, null);
+            }
+        }
         if (save) {
             String homeDir = System.getProperty("user.home");
             String path = homeDir + "/save.png";
+            if (camera != null && camera.isYuv()) {
+                yuvConverter.toBgr(frame, workspace.bgr);
+                frame = workspace.bgr;
+            }
             Imgcodecs.imwrite(path, frame);
             System.out.println("Successfully saved");
         }
         return result;
     }
 
-    public double[] processImage() {
-        return processImage(false);
+    private void publishStageTimes() {
+        SmartDashboard.putNumber("cv-frames-reused", framesReused);
+        for (Stage stage : Stage.values()) {
+            RollingHistogram h = timers.get(stage);
+            if (h.size() > 0) {
+                SmartDashboard.putNumber("cv-time " + stage.label + " p50", h.percentileMs(50));
+                SmartDashboard.putNumber("cv-time " + stage.label + " p90", h.percentileMs(90));
+            }
+        }
+    }
+
+    public StageTimers getStageTimers() {
+        return timers;
+    }
+
+    private void publish(VisionResult result) {
+        // Never replace a newer result with an older one, should a
+        // processImage() call and the service race
+        VisionResult previous;
+        do {
+            previous = latestResult.get();
+            if (previous != null && previous.getSequence() > result.getSequence()) {
+                return;
+            }
+        } while (!latestResult.compareAndSet(previous, result));
+        synchronized (latestResult) {
+            latestResult.notifyAll();
+        }
+    }
+
+    /**
+     * @return The result for the newest frame processed so far, or
+     * <code>null</code> if none has been processed yet. Never blocks.
+     */
+    public VisionResult getLatestResult() {
+        return latestResult.get();
+    }
+
+    /**
+     * @param time
+     * A <code>VisionClock</code> time, in seconds
+     * @return The newest result if its frame was captured after
+     * <code>time</code>, otherwise <code>null</code>. Never blocks, so it can be
+     * polled from a command's <code>execute</code>.
+     */
+    public VisionResult getResultAfter(double time) {
+        VisionResult result = latestResult.get();
+        return result != null && result.getCaptureTime() > time ? result : null;
+    }
+
+    /**
+     * Blocking version of <code>getResultAfter</code>, for use off the
+     * control loop.
+     *
+     * @return The result, or <code>null</code> if none arrived within
+     * <code>timeoutMs</code>
+     */
+    public VisionResult waitForResultAfter(double time, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (latestResult) {
+            VisionResult result;
+            while ((result = getResultAfter(time)) == null) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                latestResult.wait(remaining);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @param odometry
+     * Where to read the robot's heading and encoders from when recording
+     * frames
+     */
+    public void setOdometrySource(OdometrySource odometry) {
+        this.odometry = odometry;
+    }
+
+    /**
+     * Record every frame processed from now on, for
+     * <code>ReplayCaptureSource</code> to play back. Does nothing if already
+     * recording.
+     *
+     * @param basePath
+     * Path, without extension, of the segment files to write
+     */
+    public synchronized void startRecording(String basePath) {
+        if (recorder == null) {
+            recorder = new FrameRecorder(basePath, RECORDING_SEGMENT_BYTES, RECORDING_MAX_SEGMENTS);
+        }
+    }
+
+    public synchronized void stopRecording() {
+        FrameRecorder rec = recorder;
+        recorder = null;
+        if (rec != null) {
+            // Waits for a frame being recorded, but not for processing
+            rec.close();
+            System.out.println("Recorded " + rec.getFramesRecorded() + " frames");
+        }
+    }
+
+    /**
+     * Stop the service, the recording and the frame grabber, and the threads
+     * the filter keeps between frames. Must only be called once nothing else
+     * is processing a frame with this instance, e.g. once the gui's or a
+     * benchmark's loop has stopped.
+     */
+    @Override
+    public void close() {
+        stopService();
+        stopRecording();
+        if (grabber != null) {
+            grabber.stop();
+        }
+        synchronized (processingLock) {
+            parallelFilter.shutdown();
+        }
+    }
+
+    /**
+     * Measure the service's latencies over the next frames it processes.
+     * Replaces any benchmark already running.
+     */
+    public void startBenchmark(VisionBenchmark bench) {
+        benchmark.set(bench);
+    }
+
+    /**
+     * Have the service save the next frame it processes to
+     * <code>~/save.png</code>
+     */
+    public void requestFrameSave() {
+        saveRequested = true;
     }
 
     /**
      * Tests time taken to process <code>iters</code> frames read from
-     * <code>cs</code>
+     * <code>cs</code>. For the whole pipeline on the robot, with percentiles,
+     * use <code>VisionBenchmarkCommand</code> instead.
      * 
      * @param cs
      * The CaptureSource from which to read frames
      * @param iters
      * The number of frames to read from <code>cs</code> and to process and time
-     * @return The average time taken by <code>hsvThresholding</code> to process
-     * one of the frames
+     * @return The average time, in milliseconds, taken by
+     * <code>hsvThresholding</code> to process one of the frames, or
+     * <code>NaN</code> if <code>cs</code> gave no frames
      */
     public double testProcessingTime(CaptureSource cs, int iters) {
-        int total = 0;
-        double[] vec;
+        Mat rawFrame = new Mat();
+        Mat resizedFrame = new Mat();
+        long total = 0;
+        int processed = 0;
         for (int i = 0; i < iters; i++) {
-            long start = System.currentTimeMillis();
-            vec = processImage();
-            total += (int) (System.currentTimeMillis() - start);
+            Mat frame = cs.readSized(rawFrame, resizedFrame);
+            if (frame == null) {
+                break;
+            }
+            long start = System.nanoTime();
+            hsvThresholding(frame);
+            total += System.nanoTime() - start;
+            processed++;
         }
-        return total / (double) iters;
+        return processed == 0 ? Double.NaN : total / 1e6 / processed;
     }
 
     // Calculation methods:
@@ -332,6 +1187,18 @@ public class StuyVision extends VisionModule {
         return (HIGH_GOAL_HEIGHT - CAMERA_HEIGHT_FROM_GROUND) / Math.tan(Math.toRadians(angle));
     }
 
+    /**
+     * The inverse of <code>findCameraDistanceToGoal</code>
+     *
+     * @return The y-offset, in pixels from the center of a full-size frame,
+     * at which the center of the goal appears when it is <code>inches</code>
+     * from the camera
+     */
+    public static double findFrameYAtCameraDistance(double inches) {
+        double angle = Math.toDegrees(Math.atan2(HIGH_GOAL_HEIGHT - CAMERA_HEIGHT_FROM_GROUND, inches));
+        return (CAMERA_TILT_ANGLE - angle) / CAMERA_VIEWING_ANGLE_Y * CAMERA_FRAME_PX_HEIGHT;
+    }
+
     public static double findBotDistanceToGoal(double frameY) {
         return findCameraDistanceToGoal(frameY) - CAMERA_DIST_TO_BOT_FRONT;
     }
@@ -349,8 +1216,18 @@ public class StuyVision extends VisionModule {
         double goalDegsX;
         double inchesAway;
         double degsUp;
+        long time;
 
         public Report(double[] visionReading) {
+            this(visionReading, System.currentTimeMillis());
+        }
+
+        /**
+         * @param time
+         * The wall-clock time, in milliseconds, of the reading
+         */
+        public Report(double[] visionReading, long time) {
+            this.time = time;
             if (visionReading == null) {
                 return;
             }
@@ -383,7 +1260,7 @@ public class StuyVision extends VisionModule {
                     + (none ? blank : (fmt(goalDegsX) + "\u00B0 right from center")) + "\n" + "|  Angle Y:   "
                     + (none ? blank : (fmt(goalDegsY) + "\u00B0 down from center")) + "\n" + "|  Elevation: "
                     + (none ? blank : (fmt(degsUp) + "\u00B0 up from horizon")) + "\n" + "|  Cam Dist:  "
-                    + (none ? blank : fmtDist(inchesAway)) + "\n" + "|  (Time: " + System.currentTimeMillis() + ")\n";
+                    + (none ? blank : fmtDist(inchesAway)) + "\n" + "|  (Time: " + time + ")\n";
         }
 
         private static String fmtDist(double d) {
@@ -0,0 +1,138 @@
+package edu.stuy.robot.cv;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Date;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Latencies of the vision service's stages over a number of frames, after
+ * some frames of warmup. Frames are fed in by <code>StuyVision</code> as the
+ * service processes them (see <code>StuyVision.startBenchmark</code>), so
+ * the numbers reflect the real pipeline under whatever else the robot is
+ * doing.
+ */
+public class VisionBenchmark {
+
+    // Reading the frame from the camera, on the grabber thread, including
+    // any wait for the camera to deliver it
+    public static final int READ = 0;
+    // How long the frame waited between being captured and being processed
+    public static final int QUEUE = 1;
+    // Resizing, on the grabber thread
+    public static final int RESIZE = 2;
+    // hsvThresholding
+    public static final int PROCESSING = 3;
+    // From the frame being captured to its result being published
+    public static final int END_TO_END = 4;
+    public static final String[] STAGE_NAMES = { "Read", "Queue", "Resize", "Processing", "End to end" };
+
+    private static final double[] PERCENTILES = { 50, 90, 99 };
+
+    private final int warmup;
+    private final int iterations;
+    private final long[][] samples;
+    private int framesSeen; // Only touched by the processing thread
+    private volatile boolean done;
+
+    /**
+     * @param warmup
+     * Number of frames to let pass before measuring
+     * @param iterations
+     * Number of frames to measure
+     */
+    public VisionBenchmark(int warmup, int iterations) {
+        this.warmup = warmup;
+        this.iterations = iterations;
+        samples = new long[STAGE_NAMES.length][iterations];
+    }
+
+    /**
+     * Add one frame's latencies, in nanoseconds. Only called from one thread.
+     */
+    void addFrame(long read, long queue, long resize, long processing, long endToEnd) {
+        if (done) {
+            return;
+        }
+        int i = framesSeen++ - warmup;
+        if (i < 0) {
+            return;
+        }
+        samples[READ][i] = read;
+        samples[QUEUE][i] = queue;
+        samples[RESIZE][i] = resize;
+        samples[PROCESSING][i] = processing;
+        samples[END_TO_END][i] = endToEnd;
+        if (i == iterations - 1) {
+            for (long[] stage : samples) {
+                Arrays.sort(stage);
+            }
+            // Publishes the sorted samples
+            done = true;
+        }
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @param stage
+     * One of the stage constants, e.g. <code>PROCESSING</code>
+     * @param percentile
+     * Between 0 and 100
+     * @return The latency, in milliseconds, below which
+     * <code>percentile</code>% of frames fell (nearest rank). Only valid once
+     * <code>isDone</code>.
+     */
+    public double percentileMs(int stage, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * iterations);
+        return samples[stage][Math.max(0, Math.min(iterations, rank) - 1)] / 1e6;
+    }
+
+    public double maxMs(int stage) {
+        return samples[stage][iterations - 1] / 1e6;
+    }
+
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append("Vision benchmark, " + iterations + " frames after " + warmup + " of warmup (ms):\n");
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            s.append(String.format("%-12s", STAGE_NAMES[stage]));
+            for (double p : PERCENTILES) {
+                s.append(String.format("  p%.0f %7.2f", p, percentileMs(stage, p)));
+            }
+            s.append(String.format("  max %7.2f\n", maxMs(stage)));
+        }
+        return s.toString();
+    }
+
+    /**
+     * Put the results on SmartDashboard, e.g. as "cv-bench Processing p90"
+     */
+    public void publish() {
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            String prefix = "cv-bench " + STAGE_NAMES[stage] + " ";
+            for (double p : PERCENTILES) {
+                SmartDashboard.putNumber(prefix + "p" + (int) p, percentileMs(stage, p));
+            }
+            SmartDashboard.putNumber(prefix + "max", maxMs(stage));
+        }
+    }
+
+    /**
+     * Append the results to <code>path</code>
+     */
+    public void writeTo(String path) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(path, true));
+        try {
+            out.println(new Date());
+            out.println(this);
+        } finally {
+            out.close();
+        }
+    }
+}
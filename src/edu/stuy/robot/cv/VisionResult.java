@@ -0,0 +1,70 @@
+package edu.stuy.robot.cv;
+
+/**
+ * One processed frame, as published by the vision service. Immutable, so it
+ * can be handed between threads freely.
+ */
+public class VisionResult {
+
+    private final double[] reading;
+    private final StuyVision.Report report;
+    private final double captureTime;
+    private final long sequence;
+
+    VisionResult(double[] reading, double captureTime, long sequence) {
+        this.reading = reading == null ? null : reading.clone();
+        this.report = new StuyVision.Report(this.reading);
+        this.captureTime = captureTime;
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return Whether a goal was found in the frame
+     */
+    public boolean hasGoal() {
+        return reading != null;
+    }
+
+    /**
+     * @return A copy of the reading in the format of
+     * <code>hsvThresholding</code>, or <code>null</code> if no goal was found
+     */
+    public double[] getReading() {
+        return reading == null ? null : reading.clone();
+    }
+
+    public StuyVision.Report getReport() {
+        return report;
+    }
+
+    public double getGoalDegsX() {
+        return report.goalDegsX;
+    }
+
+    public double getGoalDegsY() {
+        return report.goalDegsY;
+    }
+
+    public double getDegsUp() {
+        return report.degsUp;
+    }
+
+    public double getInchesAway() {
+        return report.inchesAway;
+    }
+
+    /**
+     * @return The <code>VisionClock</code> time, in seconds, at which the
+     * frame was captured
+     */
+    public double getCaptureTime() {
+        return captureTime;
+    }
+
+    /**
+     * @return The grabber's sequence number of the frame
+     */
+    public long getSequence() {
+        return sequence;
+    }
+}
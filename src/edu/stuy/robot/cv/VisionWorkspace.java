@@ -0,0 +1,89 @@
+package edu.stuy.robot.cv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Owns every intermediate buffer used while processing a frame, so that they
+ * are allocated once and then reused for every frame after that. OpenCV only
+ * reallocates a reused <code>Mat</code> when the frame size changes.
+ *
+ * A workspace must only be used by one thread at a time.
+ */
+class VisionWorkspace {
+
+    final Mat hsv = new Mat();
+    // Raw YUV frames converted to BGR, when they cannot be classified as
+    // they are
+    final Mat bgr = new Mat();
+    // Whether the frame being processed holds Y, U and V rather than B, G
+    // and R
+    boolean yuvInput;
+    final Mat mask = new Mat();
+    // Bounds for the fused HSV filter, overwritten in place every frame
+    final Scalar lowerHsv = new Scalar(0, 0, 0);
+    final Scalar upperHsv = new Scalar(0, 0, 0);
+
+    // Per-channel filter results, only computed for the gui
+    final Mat[] channels = { new Mat(), new Mat(), new Mat() };
+
+    // Used by getLargestGoal
+    final ArrayList<MatOfPoint> contours = new ArrayList<MatOfPoint>();
+    final Mat hierarchy = new Mat();
+    final MatOfPoint2f contour2f = new MatOfPoint2f();
+    final Point origin = new Point(0, 0);
+
+    // The filtered image as runs, when it is run-length encoded
+    final RunMask runs = new RunMask();
+    final RunMask runScratch = new RunMask();
+
+    // Used by the coarse-to-fine search
+    final Mat coarse = new Mat();
+    final Mat coarseMask = new Mat();
+    final ArrayList<Rect> candidateRegions = new ArrayList<Rect>();
+    // The part of the frame searched when it is not all of it, overwritten
+    // in place every frame
+    final Rect searchArea = new Rect();
+    // Tells resize to compute the output size from its scale factors
+    final Size autoSize = new Size();
+
+    // Square structuring elements, by side length. The coarse-to-fine
+    // search uses smaller kernels than the full-resolution filter, so each
+    // size is kept rather than rebuilding one kernel back and forth.
+    private Mat[] kernels = new Mat[0];
+
+    /**
+     * @return A square structuring element of side <code>size</code>, only
+     * built the first time that size is asked for
+     */
+    Mat kernel(int size) {
+        if (size >= kernels.length) {
+            kernels = Arrays.copyOf(kernels, size + 1);
+        }
+        if (kernels[size] == null) {
+            kernels[size] = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(size, size));
+        }
+        return kernels[size];
+    }
+
+    /**
+     * <code>findContours</code> hands back a freshly allocated
+     * <code>MatOfPoint</code> per contour, so free their native memory as soon
+     * as the frame is done with them rather than waiting for the GC.
+     */
+    void releaseContours() {
+        for (int i = 0; i < contours.size(); i++) {
+            contours.get(i).release();
+        }
+        contours.clear();
+    }
+}
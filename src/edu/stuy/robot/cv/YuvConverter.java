@@ -0,0 +1,57 @@
+package edu.stuy.robot.cv;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Converts the 3-channel YUV images made from raw camera frames back to BGR,
+ * with the BT.601 studio-range coefficients cameras use for YUYV.
+ *
+ * Like <code>VisionWorkspace</code>, an instance must only be used by one
+ * thread at a time.
+ */
+class YuvConverter {
+
+    // Reused by toBgr(Mat, Mat), and only ever grown
+    private byte[] pixels = new byte[0];
+
+    /**
+     * Convert a color, each component in [0, 255], storing B, G and R in
+     * <code>bgr</code>
+     */
+    static void toBgr(int y, int u, int v, int[] bgr) {
+        int c = 298 * (y - 16) + 128;
+        int d = u - 128;
+        int e = v - 128;
+        bgr[0] = clamp((c + 516 * d) >> 8);
+        bgr[1] = clamp((c - 100 * d - 208 * e) >> 8);
+        bgr[2] = clamp((c + 409 * e) >> 8);
+    }
+
+    private static int clamp(int x) {
+        return x < 0 ? 0 : x > 255 ? 255 : x;
+    }
+
+    /**
+     * Convert every pixel of <code>yuv</code>, a <code>CV_8UC3</code> image,
+     * into <code>bgr</code>
+     */
+    void toBgr(Mat yuv, Mat bgr) {
+        int rows = yuv.rows();
+        int cols = yuv.cols();
+        int n = rows * cols * 3;
+        if (pixels.length < n) {
+            pixels = new byte[n];
+        }
+        yuv.get(0, 0, pixels);
+        int[] color = new int[3];
+        for (int i = 0; i < n; i += 3) {
+            toBgr(pixels[i] & 0xFF, pixels[i + 1] & 0xFF, pixels[i + 2] & 0xFF, color);
+            pixels[i] = (byte) color[0];
+            pixels[i + 1] = (byte) color[1];
+            pixels[i + 2] = (byte) color[2];
+        }
+        bgr.create(rows, cols, CvType.CV_8UC3);
+        bgr.put(0, 0, pixels);
+    }
+}
@@ -12,6 +12,9 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 public abstract class CaptureSource {
 
     private int resizeWidth = CAMERA_FRAME_PX_WIDTH;
+    // Cleared the first time SmartDashboard turns out to be unavailable, so
+    // that off the robot (e.g. in benchmarks) the failure is only paid once
+    private static boolean onRobot = true;
 
     public abstract void reinitializeCaptureSource();
 
@@ -19,6 +22,27 @@ public abstract class CaptureSource {
         resizeWidth = dim;
     }
 
+    public int getMaxImageDimension() {
+        return resizeWidth;
+    }
+
+    /**
+     * @return Whether <code>resize</code> gives 3-channel YUV images rather
+     * than BGR ones
+     */
+    public boolean isYuv() {
+        return false;
+    }
+
+    /**
+     * @return Whether frames arrive at their own pace, as from a camera,
+     * rather than being available as fast as they can be read, as from a
+     * file
+     */
+    public boolean isLive() {
+        return false;
+    }
+
     public abstract boolean isOpened();
 
     public Mat readSized() {
@@ -28,28 +52,42 @@ public abstract class CaptureSource {
     public Mat readSized(Mat frame, Mat resizedFrame) {
         boolean success = readFrame(frame);
         if (success) {
-            int frameHeight = frame.height();
-            int frameWidth = frame.width();
-            double resizeRatio = (double) resizeWidth / frameWidth;
-            Size desiredSize = new Size(frameWidth * resizeRatio, frameHeight * resizeRatio);
-            Imgproc.resize(frame, resizedFrame, desiredSize, 0, 0, Imgproc.INTER_CUBIC);
-            DebugPrinter.println("\nCaptureSource: init frame dims: (" + frameWidth + ", " + frameHeight + ").");
-            DebugPrinter.println("Ratio: " + resizeRatio + ".");
-            DebugPrinter.println("New dims: (" + resizedFrame.width() + ", " + resizedFrame.height() + ")\n");
-            try {
-                SmartDashboard.putNumber("Camera init frame width", frameWidth);
-                SmartDashboard.putNumber("Camera init frame height", frameHeight);
-                SmartDashboard.putNumber("Camera frame width", resizedFrame.width());
-                SmartDashboard.putNumber("Camera frame height", resizedFrame.height());
-                SmartDashboard.putBoolean("Camera isOpened", isOpened());
-            } catch (Error e) {
-                // When testing off-robot the above will obviously fail
-            }
-            return resizedFrame;
+            return resize(frame, resizedFrame);
         } else {
             return null;
         }
     }
 
+    /**
+     * Resize a frame read by <code>readFrame</code> to the width set by
+     * <code>setMaxImageDimension</code>, as <code>readSized</code> does
+     *
+     * @return <code>resizedFrame</code>
+     */
+    public Mat resize(Mat frame, Mat resizedFrame) {
+        int frameHeight = frame.height();
+        int frameWidth = frame.width();
+        double resizeRatio = (double) resizeWidth / frameWidth;
+        Size desiredSize = new Size(frameWidth * resizeRatio, frameHeight * resizeRatio);
+        Imgproc.resize(frame, resizedFrame, desiredSize, 0, 0, Imgproc.INTER_CUBIC);
+        DebugPrinter.println("\nCaptureSource: init frame dims: (" + frameWidth + ", " + frameHeight + ").");
+        DebugPrinter.println("Ratio: " + resizeRatio + ".");
+        DebugPrinter.println("New dims: (" + resizedFrame.width() + ", " + resizedFrame.height() + ")\n");
+        if (!onRobot) {
+            return resizedFrame;
+        }
+        try {
+            SmartDashboard.putNumber("Camera init frame width", frameWidth);
+            SmartDashboard.putNumber("Camera init frame height", frameHeight);
+            SmartDashboard.putNumber("Camera frame width", resizedFrame.width());
+            SmartDashboard.putNumber("Camera frame height", resizedFrame.height());
+            SmartDashboard.putBoolean("Camera isOpened", isOpened());
+        } catch (Error e) {
+            // When testing off-robot the above will obviously fail
+            onRobot = false;
+        }
+        return resizedFrame;
+    }
+
     public abstract boolean readFrame(Mat mat);
 }
@@ -0,0 +1,68 @@
+package edu.stuy.robot.cv.capture;
+
+import org.opencv.core.Mat;
+
+/**
+ * One of the preallocated buffers owned by a <code>FrameGrabber</code>,
+ * together with the time at which the image in it was captured.
+ */
+public class CapturedFrame {
+
+    public final Mat mat;
+    private double captureTime;
+    private long captureNanos;
+    private long readNanos;
+    private long resizeNanos;
+    private long sequence;
+
+    CapturedFrame() {
+        mat = new Mat();
+    }
+
+    void stamp(double captureTime, long captureNanos, long readNanos, long resizeNanos, long sequence) {
+        this.captureTime = captureTime;
+        this.captureNanos = captureNanos;
+        this.readNanos = readNanos;
+        this.resizeNanos = resizeNanos;
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return The <code>VisionClock</code> time, in seconds, at which the
+     * frame finished being read from the camera
+     */
+    public double getCaptureTime() {
+        return captureTime;
+    }
+
+    /**
+     * @return The same moment as <code>getCaptureTime</code>, on the
+     * <code>System.nanoTime()</code> clock, for measuring latencies
+     */
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+
+    /**
+     * @return How long, in nanoseconds, the grabber's call to
+     * <code>readFrame</code> took, including any wait for the camera
+     */
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    /**
+     * @return How long, in nanoseconds, the grabber took to resize the frame
+     */
+    public long getResizeNanos() {
+        return resizeNanos;
+    }
+
+    /**
+     * @return The number of frames grabbed up to and including this one. Zero
+     * means the buffer has never been filled.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+}
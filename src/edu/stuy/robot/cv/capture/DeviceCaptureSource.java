@@ -2,11 +2,23 @@ package edu.stuy.robot.cv.capture;
 
 import org.opencv.core.Mat;
 import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
 public class DeviceCaptureSource extends CaptureSource {
 
+    // The camera's native format, as a V4L2 fourcc
+    private static final int FOURCC_YUYV = 'Y' | 'U' << 8 | 'Y' << 16 | 'V' << 24;
+
     private final int deviceNo;
     public VideoCapture capture = null;
 
+    // Whether to have the camera hand over raw YUYV frames, and whether it
+    // has agreed to
+    private boolean rawYuyvRequested;
+    private boolean rawYuyv;
+    private int rawWidth;
+    private int rawHeight;
+    private final YuyvResizer yuyvResizer = new YuyvResizer();
+
     public DeviceCaptureSource(int device) {
         this.deviceNo = device;
         reinitializeCaptureSource();
@@ -18,6 +30,45 @@ public class DeviceCaptureSource extends CaptureSource {
             capture.release();
         }
         capture = new VideoCapture(deviceNo);
+        if (rawYuyvRequested) {
+            setRawYuyv(true);
+        }
+    }
+
+    /**
+     * Ask the camera for its frames as raw YUYV, rather than having OpenCV
+     * convert them to BGR. <code>resize</code> then gives 3-channel YUV
+     * images instead of BGR ones. Must be called before frames are read, not
+     * while a <code>FrameGrabber</code> is reading them.
+     *
+     * @return Whether the camera agreed. If it did not, frames stay BGR.
+     */
+    public boolean setRawYuyv(boolean raw) {
+        rawYuyvRequested = raw;
+        if (!raw) {
+            capture.set(Videoio.CV_CAP_PROP_CONVERT_RGB, 1);
+            rawYuyv = false;
+            return true;
+        }
+        rawYuyv = capture.set(Videoio.CV_CAP_PROP_FOURCC, FOURCC_YUYV)
+                && capture.set(Videoio.CV_CAP_PROP_CONVERT_RGB, 0);
+        if (rawYuyv) {
+            rawWidth = (int) capture.get(Videoio.CV_CAP_PROP_FRAME_WIDTH);
+            rawHeight = (int) capture.get(Videoio.CV_CAP_PROP_FRAME_HEIGHT);
+        } else {
+            capture.set(Videoio.CV_CAP_PROP_CONVERT_RGB, 1);
+        }
+        return rawYuyv;
+    }
+
+    @Override
+    public boolean isYuv() {
+        return rawYuyv;
+    }
+
+    @Override
+    public boolean isLive() {
+        return true;
     }
 
     @Override
@@ -29,4 +80,13 @@ public class DeviceCaptureSource extends CaptureSource {
     public boolean readFrame(Mat mat) {
         return capture.read(mat);
     }
+
+    @Override
+    public Mat resize(Mat frame, Mat resizedFrame) {
+        if (!rawYuyv) {
+            return super.resize(frame, resizedFrame);
+        }
+        yuyvResizer.resize(frame, rawWidth, rawHeight, getMaxImageDimension(), resizedFrame);
+        return resizedFrame;
+    }
 }
@@ -0,0 +1,152 @@
+package edu.stuy.robot.cv.capture;
+
+import org.opencv.core.Mat;
+
+import edu.stuy.robot.cv.util.VisionClock;
+
+/**
+ * Reads frames from a <code>CaptureSource</code> as fast as it produces them
+ * on a dedicated thread, so that the camera's internal buffer never holds
+ * stale frames. Frames are kept in a triple buffer of preallocated
+ * <code>Mat</code>s: the grabber thread fills one, one holds the newest
+ * complete frame, and one belongs to the reader.
+ *
+ * There must only be one reader. A frame returned by <code>latest</code> or
+ * <code>waitForFrameAfter</code> stays valid until the reader calls either
+ * method again.
+ */
+public class FrameGrabber implements Runnable {
+
+    // Time to back off when the source fails to give a frame, so that an
+    // unplugged camera does not spin a core
+    private static final long READ_FAILURE_SLEEP_MS = 10;
+
+    private final CaptureSource source;
+    private final CapturedFrame[] buffers = new CapturedFrame[3];
+    private final Mat rawFrame = new Mat();
+
+    // Indices into `buffers`, guarded by `this`
+    private int back = 0; // Being written by the grabber thread
+    private int middle = 1; // Newest complete frame
+    private int front = 2; // Owned by the reader
+    private boolean fresh; // Whether `middle` holds a frame the reader has not taken
+
+    private long framesGrabbed;
+    private volatile boolean running;
+    private Thread thread;
+
+    public FrameGrabber(CaptureSource source) {
+        this.source = source;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new CapturedFrame();
+        }
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "Frame Grabber");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            CapturedFrame target = buffers[back];
+            long readStart = System.nanoTime();
+            if (!source.readFrame(rawFrame)) {
+                try {
+                    Thread.sleep(READ_FAILURE_SLEEP_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            // Stamp the frame as soon as the camera hands it over, before
+            // spending any time on it
+            double captureTime = VisionClock.now();
+            long captureNanos = System.nanoTime();
+            long readNanos = captureNanos - readStart;
+            source.resize(rawFrame, target.mat);
+            long resizeNanos = System.nanoTime() - captureNanos;
+            synchronized (this) {
+                target.stamp(captureTime, captureNanos, readNanos, resizeNanos, ++framesGrabbed);
+                int tmp = middle;
+                middle = back;
+                back = tmp;
+                fresh = true;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return The newest frame grabbed so far, or <code>null</code> if no
+     * frame has been grabbed yet. Never blocks.
+     */
+    public synchronized CapturedFrame latest() {
+        takeFresh();
+        CapturedFrame frame = buffers[front];
+        return frame.getSequence() == 0 ? null : frame;
+    }
+
+    /**
+     * Wait until a frame with a sequence number greater than
+     * <code>sequence</code> has been grabbed.
+     *
+     * @param sequence
+     * The sequence number of the last frame the caller has seen
+     * @param timeoutMs
+     * The longest time to wait
+     * @return The newest frame, or <code>null</code> if no new frame arrived in
+     * time
+     */
+    public synchronized CapturedFrame waitForFrameAfter(long sequence, long timeoutMs) throws InterruptedException {
+        if (!awaitFrameAfter(sequence, timeoutMs)) {
+            return null;
+        }
+        takeFresh();
+        return buffers[front];
+    }
+
+    /**
+     * Like <code>waitForFrameAfter</code>, but without taking the frame, so
+     * the reader's current frame stays valid.
+     *
+     * @return Whether a new frame arrived in time
+     */
+    public synchronized boolean awaitFrameAfter(long sequence, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (framesGrabbed <= sequence) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of frames grabbed so far
+     */
+    public synchronized long getFramesGrabbed() {
+        return framesGrabbed;
+    }
+
+    private void takeFresh() {
+        if (fresh) {
+            int tmp = front;
+            front = middle;
+            middle = tmp;
+            fresh = false;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package edu.stuy.robot.cv.capture;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.opencv.core.Mat;
+
+import edu.stuy.robot.cv.util.OdometrySource;
+
+/**
+ * Appends raw frames, with their capture times and the robot's odometry, to
+ * memory-mapped segment files, for <code>ReplayCaptureSource</code> to play
+ * back later.
+ *
+ * Each segment is preallocated to <code>segmentBytes</code> and named
+ * <code>basePath.000.seg</code>, <code>basePath.001.seg</code>, and so on.
+ * Once <code>maxSegments</code> segments are full, recording stops, so a
+ * forgotten recorder cannot fill the roboRIO's flash.
+ *
+ * Frames must have 8-bit channels, like those from a camera, and be BGR, as
+ * <code>ReplayCaptureSource</code> plays them back as such.
+ */
+public class FrameRecorder {
+
+    // Segment layout
+    static final int MAGIC = 0x5356_5347; // "SVSG"
+    static final int VERSION = 1;
+    static final int FRAME_COUNT = 8; // int, updated after each frame is appended
+    static final int HEADER_SIZE = 16;
+
+    // Frame record layout, as offsets into the record
+    static final int CAPTURE_TIME = 0; // double, VisionClock seconds
+    static final int SEQUENCE = 8; // long
+    static final int HEADING = 16; // double, degrees
+    static final int LEFT_ENCODER = 24; // double, inches
+    static final int RIGHT_ENCODER = 32; // double, inches
+    static final int ROWS = 40; // int
+    static final int COLS = 44; // int
+    static final int TYPE = 48; // int, OpenCV type
+    static final int DATA_BYTES = 52; // int, number of bytes of pixels following
+    static final int RECORD_HEADER_SIZE = 56;
+
+    private final String basePath;
+    private final int segmentBytes;
+    private final int maxSegments;
+
+    private int segmentIndex = -1;
+    private RandomAccessFile file;
+    private MappedByteBuffer segment;
+    private int framesInSegment;
+    private long framesRecorded;
+    private boolean full;
+
+    // Pixels pass through here on their way into the segment, as OpenCV's
+    // Java API cannot copy a Mat straight into a ByteBuffer
+    private byte[] pixels = new byte[0];
+
+    public FrameRecorder(String basePath, int segmentBytes, int maxSegments) {
+        this.basePath = basePath;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * Append a frame.
+     *
+     * @param odometry
+     * Where to read the robot's heading and encoders from, or
+     * <code>null</code> to record them as <code>NaN</code>
+     * @return Whether the frame was recorded. <code>false</code> once all the
+     * segments are full, or after an I/O error.
+     */
+    public synchronized boolean record(Mat frame, double captureTime, long sequence, OdometrySource odometry) {
+        if (full) {
+            return false;
+        }
+        int dataBytes = (int) (frame.total() * frame.elemSize());
+        try {
+            if (segment == null || segment.remaining() < RECORD_HEADER_SIZE + dataBytes) {
+                if (!nextSegment(RECORD_HEADER_SIZE + dataBytes)) {
+                    full = true;
+                    close();
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error creating frame recording segment: " + e);
+            full = true;
+            close();
+            return false;
+        }
+        if (pixels.length < dataBytes) {
+            pixels = new byte[dataBytes];
+        }
+        if (frame.isContinuous()) {
+            frame.get(0, 0, pixels);
+        } else {
+            // E.g. a submat. Free the copy's native memory straight away
+            // rather than leaving it for the GC.
+            Mat continuous = frame.clone();
+            continuous.get(0, 0, pixels);
+            continuous.release();
+        }
+
+        int at = segment.position();
+        segment.putDouble(at + CAPTURE_TIME, captureTime);
+        segment.putLong(at + SEQUENCE, sequence);
+        segment.putDouble(at + HEADING, odometry == null ? Double.NaN : odometry.getHeadingAt(captureTime));
+        segment.putDouble(at + LEFT_ENCODER, odometry == null ? Double.NaN : odometry.getLeftEncoder());
+        segment.putDouble(at + RIGHT_ENCODER, odometry == null ? Double.NaN : odometry.getRightEncoder());
+        segment.putInt(at + ROWS, frame.rows());
+        segment.putInt(at + COLS, frame.cols());
+        segment.putInt(at + TYPE, frame.type());
+        segment.putInt(at + DATA_BYTES, dataBytes);
+        segment.position(at + RECORD_HEADER_SIZE);
+        segment.put(pixels, 0, dataBytes);
+        // Only count the frame once all of it is in place, so a reader of a
+        // segment cut short never sees half a frame
+        segment.putInt(FRAME_COUNT, ++framesInSegment);
+        framesRecorded++;
+        return true;
+    }
+
+    /**
+     * @return The number of frames recorded so far, over all segments
+     */
+    public synchronized long getFramesRecorded() {
+        return framesRecorded;
+    }
+
+    /**
+     * Finish the current segment. Further calls to <code>record</code> return
+     * <code>false</code>.
+     */
+    public synchronized void close() {
+        full = true;
+        closeSegment();
+    }
+
+    private boolean nextSegment(int bytesNeeded) throws IOException {
+        closeSegment();
+        if (segmentIndex + 1 >= maxSegments || HEADER_SIZE + bytesNeeded > segmentBytes) {
+            return false;
+        }
+        segmentIndex++;
+        file = new RandomAccessFile(segmentPath(basePath, segmentIndex), "rw");
+        file.setLength(segmentBytes);
+        segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.putInt(0, MAGIC);
+        segment.putInt(4, VERSION);
+        segment.putInt(FRAME_COUNT, 0);
+        segment.position(HEADER_SIZE);
+        framesInSegment = 0;
+        return true;
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        int used = segment.position();
+        segment.force();
+        segment = null;
+        try {
+            // Give back the unused, preallocated end of the segment
+            file.setLength(used);
+            file.close();
+        } catch (IOException e) {
+            System.out.println("Error closing frame recording segment: " + e);
+        }
+        file = null;
+    }
+
+    static String segmentPath(String basePath, int index) {
+        return basePath + "." + String.format("%03d", index) + ".seg";
+    }
+}
@@ -0,0 +1,170 @@
+package edu.stuy.robot.cv.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.opencv.core.Mat;
+
+/**
+ * Plays back frames recorded by a <code>FrameRecorder</code>, either at the
+ * rate they were recorded at or as fast as they can be read.
+ *
+ * The heading and encoder readings recorded with each frame are skipped, as
+ * nothing that processes replayed frames uses odometry.
+ */
+public class ReplayCaptureSource extends CaptureSource {
+
+    private final String basePath;
+    private final boolean realTime;
+
+    private int segmentIndex;
+    private MappedByteBuffer segment;
+    private int framesLeftInSegment;
+    private boolean opened;
+
+    // The segment is mapped, but OpenCV's Java API can only fill a Mat from
+    // a Java array, so pixels are copied through here
+    private byte[] pixels = new byte[0];
+
+    // Recorded values of the last frame read
+    private double captureTime = Double.NaN;
+    private long sequence;
+
+    // For real-time playback: when the first frame was recorded and replayed
+    private double firstCaptureTime;
+    private long replayStartNanos;
+
+    /**
+     * @param basePath
+     * The <code>basePath</code> the recording was made with
+     * @param realTime
+     * Whether to wait between frames as long as passed between them when
+     * they were recorded
+     */
+    public ReplayCaptureSource(String basePath, boolean realTime) {
+        if (!new File(FrameRecorder.segmentPath(basePath, 0)).exists()) {
+            throw new IllegalArgumentException("No recording at " + basePath);
+        }
+        this.basePath = basePath;
+        this.realTime = realTime;
+        reinitializeCaptureSource();
+    }
+
+    public ReplayCaptureSource(String basePath, boolean realTime, int maxDimension) {
+        this(basePath, realTime);
+        setMaxImageDimension(maxDimension);
+    }
+
+    @Override
+    public void reinitializeCaptureSource() {
+        segmentIndex = -1;
+        segment = null;
+        framesLeftInSegment = 0;
+        replayStartNanos = 0;
+        opened = true;
+    }
+
+    @Override
+    public boolean isLive() {
+        // Real-time playback paces itself like a camera
+        return realTime;
+    }
+
+    @Override
+    public boolean isOpened() {
+        return opened;
+    }
+
+    @Override
+    public boolean readFrame(Mat mat) {
+        try {
+            while (framesLeftInSegment == 0) {
+                if (!nextSegment()) {
+                    // End of the recording
+                    opened = false;
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading recording segment: " + e);
+            opened = false;
+            return false;
+        }
+        int at = segment.position();
+        captureTime = segment.getDouble(at + FrameRecorder.CAPTURE_TIME);
+        sequence = segment.getLong(at + FrameRecorder.SEQUENCE);
+        int rows = segment.getInt(at + FrameRecorder.ROWS);
+        int cols = segment.getInt(at + FrameRecorder.COLS);
+        int type = segment.getInt(at + FrameRecorder.TYPE);
+        int dataBytes = segment.getInt(at + FrameRecorder.DATA_BYTES);
+        if (pixels.length < dataBytes) {
+            pixels = new byte[dataBytes];
+        }
+        segment.position(at + FrameRecorder.RECORD_HEADER_SIZE);
+        segment.get(pixels, 0, dataBytes);
+        framesLeftInSegment--;
+
+        if (realTime) {
+            waitUntilDue();
+        }
+        mat.create(rows, cols, type);
+        mat.put(0, 0, pixels);
+        return true;
+    }
+
+    private void waitUntilDue() {
+        if (replayStartNanos == 0) {
+            replayStartNanos = System.nanoTime();
+            firstCaptureTime = captureTime;
+            return;
+        }
+        long dueNanos = replayStartNanos + (long) ((captureTime - firstCaptureTime) * 1e9);
+        long waitNanos = dueNanos - System.nanoTime();
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean nextSegment() throws IOException {
+        File file = new File(FrameRecorder.segmentPath(basePath, segmentIndex + 1));
+        if (!file.exists()) {
+            return false;
+        }
+        segmentIndex++;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // The mapping stays valid after the file is closed
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        if (segment.getInt(0) != FrameRecorder.MAGIC || segment.getInt(4) != FrameRecorder.VERSION) {
+            throw new IOException(file + " is not a frame recording segment");
+        }
+        framesLeftInSegment = segment.getInt(FrameRecorder.FRAME_COUNT);
+        segment.position(FrameRecorder.HEADER_SIZE);
+        return true;
+    }
+
+    /**
+     * @return The <code>VisionClock</code> time at which the last frame read
+     * was originally captured
+     */
+    public double getRecordedCaptureTime() {
+        return captureTime;
+    }
+
+    /**
+     * @return The sequence number the last frame read was recorded with
+     */
+    public long getRecordedSequence() {
+        return sequence;
+    }
+}
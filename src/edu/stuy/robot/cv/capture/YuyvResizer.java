@@ -0,0 +1,86 @@
+package edu.stuy.robot.cv.capture;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Resizes raw YUYV frames straight into 3-channel YUV images, taking the
+ * nearest source pixel for each output pixel. This replaces both OpenCV's
+ * YUYV to BGR conversion and the cubic resize of the BGR frame with one pass
+ * that only reads the source pixels it keeps.
+ *
+ * In YUYV, each pair of pixels is stored as four bytes, Y0 U Y1 V, sharing
+ * one U and V.
+ */
+class YuyvResizer {
+
+    // Byte offsets into a source row of the Y, U and V of each output
+    // column, and the source row of each output row, rebuilt when the sizes
+    // change
+    private int[] yOffsets = new int[0];
+    private int[] uOffsets = new int[0];
+    private int[] sourceRows = new int[0];
+    private int sourceWidth;
+    private int sourceHeight;
+    private int width;
+    private int height;
+
+    private byte[] in = new byte[0];
+    private byte[] out = new byte[0];
+
+    /**
+     * @param raw
+     * A YUYV frame <code>sourceWidth</code> by <code>sourceHeight</code>
+     * pixels, in whatever shape the capture gave it, e.g. a single row of
+     * bytes
+     * @param resized
+     * Set to a <code>CV_8UC3</code> image of Y, U and V, <code>width</code>
+     * pixels wide and scaled in proportion
+     */
+    void resize(Mat raw, int sourceWidth, int sourceHeight, int width, Mat resized) {
+        int height = (int) Math.round((double) sourceHeight * width / sourceWidth);
+        if (sourceWidth != this.sourceWidth || sourceHeight != this.sourceHeight || width != this.width
+                || height != this.height) {
+            rebuildMaps(sourceWidth, sourceHeight, width, height);
+        }
+        int rowBytes = sourceWidth * 2;
+        if (in.length < rowBytes * sourceHeight) {
+            in = new byte[rowBytes * sourceHeight];
+        }
+        if (out.length < width * height * 3) {
+            out = new byte[width * height * 3];
+        }
+        raw.get(0, 0, in);
+        int j = 0;
+        for (int y = 0; y < height; y++) {
+            int row = sourceRows[y] * rowBytes;
+            for (int x = 0; x < width; x++) {
+                int uv = row + uOffsets[x];
+                out[j++] = in[row + yOffsets[x]];
+                out[j++] = in[uv];
+                out[j++] = in[uv + 2];
+            }
+        }
+        resized.create(height, width, CvType.CV_8UC3);
+        resized.put(0, 0, out);
+    }
+
+    private void rebuildMaps(int sourceWidth, int sourceHeight, int width, int height) {
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.width = width;
+        this.height = height;
+        yOffsets = new int[width];
+        uOffsets = new int[width];
+        for (int x = 0; x < width; x++) {
+            // The source pixel whose center is nearest this pixel's
+            int sx = Math.min(sourceWidth - 1, (int) ((x + 0.5) * sourceWidth / width));
+            yOffsets[x] = sx * 2;
+            uOffsets[x] = (sx / 2) * 4 + 1;
+        }
+        sourceRows = new int[height];
+        for (int y = 0; y < height; y++) {
+            sourceRows[y] = Math.min(sourceHeight - 1, (int) ((y + 0.5) * sourceHeight / height));
+        }
+    }
+}
@@ -17,10 +17,15 @@ public class BooleanVariable extends Variable {
 
     public void setValue(boolean b) {
         val = b;
+        publish(b ? 1 : 0);
     }
 
     public void restoreDefault() {
-        val = DEFAULT;
+        setValue(DEFAULT);
+    }
+
+    double toDouble() {
+        return val ? 1 : 0;
     }
 
 }
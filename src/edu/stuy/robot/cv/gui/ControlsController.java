@@ -5,6 +5,8 @@ import java.text.DecimalFormat;
 import java.util.ArrayList;
 
 import edu.stuy.robot.cv.util.DebugPrinter;
+import edu.stuy.robot.cv.util.StageTimers;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
@@ -29,6 +31,9 @@ public class ControlsController {
 
     final DecimalFormat formatter = new DecimalFormat("#.###");
 
+    // How often to refresh the stage timing panel
+    private static final long TIMING_REFRESH_NANOS = 500000000L;
+
     public void setup(VisionModule module) {
         ArrayList<VariableWrapper> variables = new ArrayList<>();
         restoreDefaults.setOnAction((event) -> {
@@ -110,30 +115,58 @@ public class ControlsController {
                 catch (IllegalArgumentException | IllegalAccessException e) {
                     e.printStackTrace();
                 }
-                VBox checkBoxContainer = new VBox();
-                checkBoxContainer.setAlignment(Pos.CENTER);
-                CheckBox checkBox = new CheckBox(bv.LABEL);
-                checkBox.setSelected(bv.DEFAULT);
-                checkBox.getStyleClass().add("boolean-label");
-                final BooleanVariable finalBv = bv;
-                checkBoxContainer.getChildren().addAll(checkBox);
-                checkBox.selectedProperty().addListener(new ChangeListener<Boolean>() {
-                    @Override
-                    public void changed(ObservableValue<? extends Boolean> observable, Boolean oldValue,
-                            Boolean newValue) {
-                        boolean booleanValue = newValue.booleanValue();
-                        finalBv.setValue(booleanValue);
-                    }
-                });
-                variables.add(new BooleanVariableWrapper(checkBox, finalBv));
-                variableContainers.add(checkBoxContainer);
+                variableContainers.add(checkBoxFor(bv, variables));
             }
         }
+        StageTimers timers = module.getStageTimers();
+        if (timers != null) {
+            variableContainers.add(timingPanel(timers));
+        }
         Platform.runLater(() -> {
             controlsContainer.getChildren().addAll(variableContainers);
         });
     }
 
+    private VBox checkBoxFor(BooleanVariable bv, ArrayList<VariableWrapper> variables) {
+        VBox checkBoxContainer = new VBox();
+        checkBoxContainer.setAlignment(Pos.CENTER);
+        CheckBox checkBox = new CheckBox(bv.LABEL);
+        checkBox.setSelected(bv.DEFAULT);
+        checkBox.getStyleClass().add("boolean-label");
+        checkBoxContainer.getChildren().addAll(checkBox);
+        checkBox.selectedProperty().addListener(new ChangeListener<Boolean>() {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> observable, Boolean oldValue,
+                    Boolean newValue) {
+                boolean booleanValue = newValue.booleanValue();
+                bv.setValue(booleanValue);
+            }
+        });
+        variables.add(new BooleanVariableWrapper(checkBox, bv));
+        return checkBoxContainer;
+    }
+
+    /**
+     * @return A table of the percentiles of the time taken by each stage of
+     * the module's pipeline, refreshed twice a second
+     */
+    private Node timingPanel(StageTimers timers) {
+        Text timing = new Text();
+        timing.getStyleClass().add("stage-timing");
+        new AnimationTimer() {
+            private long lastRefresh;
+
+            @Override
+            public void handle(long now) {
+                if (now - lastRefresh >= TIMING_REFRESH_NANOS) {
+                    lastRefresh = now;
+                    timing.setText(timers.summary());
+                }
+            }
+        }.start();
+        return timing;
+    }
+
     private abstract class VariableWrapper {
         public abstract void restoreDefault();
     }
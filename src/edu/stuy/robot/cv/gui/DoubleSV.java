@@ -25,6 +25,7 @@ public class DoubleSV extends Variable implements NumberVariable {
     public void set(double d) {
         assert MIN <= d && d <= MAX;
         val = d;
+        publish(d);
     }
 
     @Override
@@ -36,4 +37,9 @@ public class DoubleSV extends Variable implements NumberVariable {
         set(DEFAULT);
     }
 
+    @Override
+    double toDouble() {
+        return val;
+    }
+
 }
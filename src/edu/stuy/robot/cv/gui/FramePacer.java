@@ -0,0 +1,136 @@
+package edu.stuy.robot.cv.gui;
+
+import java.util.function.Consumer;
+
+import org.opencv.core.Mat;
+
+import edu.stuy.robot.cv.capture.CaptureSource;
+import edu.stuy.robot.cv.capture.CapturedFrame;
+import edu.stuy.robot.cv.capture.FrameGrabber;
+
+/**
+ * Runs the gui's vision loop, paced by the source rather than by a fixed
+ * sleep. A live source, such as a camera, is read on its own thread by a
+ * <code>FrameGrabber</code>, and the loop waits for each new frame and
+ * processes it as soon as it arrives, so it keeps up with the camera whenever
+ * processing is fast enough and idles whenever the camera is slower. An
+ * offline source, such as a video file, is read and processed back to back,
+ * as fast as both can go. Either way it runs until its thread is
+ * interrupted.
+ *
+ * The time taken to capture and to process each frame is measured, and
+ * smoothed along with the rate frames are finished at, for the gui to show.
+ */
+class FramePacer implements Runnable {
+
+    // Weight of each new measurement in the smoothed values
+    private static final double SMOOTHING = 0.1;
+    // Longest wait for a live frame before checking the source again
+    private static final long FRAME_TIMEOUT_MS = 1000;
+    // Time to back off when an offline source has no frame, e.g. at the end
+    // of a recording
+    private static final long NO_FRAME_SLEEP_MS = 100;
+
+    private final CaptureSource source;
+    private final Consumer<Mat> processor;
+
+    // Smoothed, in frames per second and milliseconds. Written by the vision
+    // thread and read by the FX thread.
+    private volatile double fps;
+    private volatile double captureMs;
+    private volatile double processMs;
+
+    private long lastFinishNanos;
+
+    /**
+     * @param processor
+     * Called on the pacer's thread with each frame, which is only valid until
+     * it returns
+     */
+    FramePacer(CaptureSource source, Consumer<Mat> processor) {
+        this.source = source;
+        this.processor = processor;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (source.isLive()) {
+                runLive();
+            } else {
+                runOffline();
+            }
+        } catch (InterruptedException e) {
+            // Asked to stop
+        }
+    }
+
+    private void runLive() throws InterruptedException {
+        FrameGrabber grabber = new FrameGrabber(source);
+        grabber.start();
+        try {
+            long lastSequence = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                if (!grabber.awaitFrameAfter(lastSequence, FRAME_TIMEOUT_MS)) {
+                    continue;
+                }
+                CapturedFrame frame = grabber.latest();
+                lastSequence = frame.getSequence();
+                // The grabber thread has already read and resized the frame
+                process(frame.mat, frame.getReadNanos() + frame.getResizeNanos());
+            }
+        } finally {
+            grabber.stop();
+        }
+    }
+
+    private void runOffline() throws InterruptedException {
+        Mat rawFrame = new Mat();
+        Mat resizedFrame = new Mat();
+        while (!Thread.currentThread().isInterrupted()) {
+            long start = System.nanoTime();
+            Mat frame = source.readSized(rawFrame, resizedFrame);
+            if (frame == null) {
+                Thread.sleep(NO_FRAME_SLEEP_MS);
+                continue;
+            }
+            process(frame, System.nanoTime() - start);
+        }
+    }
+
+    private void process(Mat frame, long captureNanos) {
+        long start = System.nanoTime();
+        try {
+            processor.accept(frame);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        long finish = System.nanoTime();
+        captureMs = smooth(captureMs, captureNanos / 1e6);
+        processMs = smooth(processMs, (finish - start) / 1e6);
+        if (lastFinishNanos != 0) {
+            fps = smooth(fps, 1e9 / (finish - lastFinishNanos));
+        }
+        lastFinishNanos = finish;
+    }
+
+    private static double smooth(double average, double sample) {
+        // Start from the first sample rather than from zero
+        return average == 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+
+    /**
+     * @return The smoothed rate frames are finished at
+     */
+    double getFps() {
+        return fps;
+    }
+
+    double getCaptureMs() {
+        return captureMs;
+    }
+
+    double getProcessMs() {
+        return processMs;
+    }
+}
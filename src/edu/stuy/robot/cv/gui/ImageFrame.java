@@ -0,0 +1,172 @@
+package edu.stuy.robot.cv.gui;
+
+import java.util.ArrayList;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import javafx.scene.control.Tab;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.text.Text;
+
+/**
+ * One image shown by the gui, and the buffers used to show it. The vision
+ * thread copies each new image's pixels straight out of its
+ * <code>Mat</code> into a pixel buffer, and the FX thread writes them into
+ * a <code>WritableImage</code> kept for the image's size. Nothing is
+ * compressed, and nothing is allocated unless an image is larger than any
+ * before it, or of a size not seen before, as happens when one slot shows
+ * both whole frames and crops of them.
+ *
+ * There are two pixel buffers: the vision thread fills one while the FX
+ * thread may be reading the other, and they are swapped once it is full.
+ * The ready buffer is a mailbox the FX thread empties once per pulse: an
+ * image posted before the last one was drawn replaces it, so a slow gui
+ * never queues up stale images. Modules can post to the same slot several
+ * times for one frame, e.g. once per crop searched, so it is frames rather
+ * than images that are counted, and a frame only counts as dropped if none
+ * of its images were drawn.
+ */
+class ImageFrame {
+
+    // ARGB for each gray level, so masks are expanded with one lookup per
+    // pixel
+    private static final int[] GRAY_TO_ARGB = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            GRAY_TO_ARGB[i] = 0xFF000000 | i << 16 | i << 8 | i;
+        }
+    }
+
+    final ImageView imageView;
+    final Text label;
+    final String name;
+    // The tab the image is shown in
+    final Tab tab;
+
+    // Set by the FX thread every pulse
+    volatile boolean visible = true;
+
+    // Only used by the vision thread
+    private byte[] bytes = new byte[0];
+    private int[] filling = new int[0];
+
+    // Guarded by `this`
+    private int[] ready = new int[0];
+    private int readyWidth;
+    private int readyHeight;
+    private boolean fresh;
+    // Frame the ready image came from, and whether any image of it has been
+    // drawn
+    private long readyFrame = -1;
+    private boolean readyFrameShown;
+    private long posted;
+    private long dropped;
+
+    // Only used by the FX thread: one image for each size shown so far
+    private final ArrayList<WritableImage> images = new ArrayList<WritableImage>();
+    private WritableImage image;
+
+    ImageFrame(ImageView imageView, Text label, String name, Tab tab) {
+        this.imageView = imageView;
+        this.label = label;
+        this.name = name;
+        this.tab = tab;
+    }
+
+    /**
+     * Copy the pixels of <code>m</code>, a <code>CV_8UC1</code> or BGR
+     * <code>CV_8UC3</code> image, to be shown by the next
+     * <code>draw</code>. Call from the vision thread.
+     *
+     * @param frame
+     * The number of the frame the image was made from
+     */
+    void update(Mat m, long frame) {
+        int width = m.cols();
+        int height = m.rows();
+        int n = width * height;
+        int channels = CvType.channels(m.type());
+        if (bytes.length < n * channels) {
+            bytes = new byte[n * channels];
+        }
+        // Only ever grow the buffers, as they are swapped, and slots can get
+        // images of different sizes one after another
+        if (filling.length < n) {
+            filling = new int[n];
+        }
+        m.get(0, 0, bytes);
+        int[] out = filling;
+        if (channels == 1) {
+            for (int i = 0; i < n; i++) {
+                out[i] = GRAY_TO_ARGB[bytes[i] & 0xFF];
+            }
+        } else {
+            for (int i = 0, j = 0; i < n; i++, j += channels) {
+                out[i] = 0xFF000000 | (bytes[j + 2] & 0xFF) << 16 | (bytes[j + 1] & 0xFF) << 8 | (bytes[j] & 0xFF);
+            }
+        }
+        synchronized (this) {
+            filling = ready;
+            ready = out;
+            readyWidth = width;
+            readyHeight = height;
+            if (frame != readyFrame) {
+                if (readyFrame >= 0 && !readyFrameShown) {
+                    dropped++;
+                }
+                readyFrame = frame;
+                readyFrameShown = false;
+                posted++;
+            }
+            fresh = true;
+        }
+    }
+
+    /**
+     * Show the newest pixels passed to <code>update</code>, if they have not
+     * been shown yet. Call from the FX thread.
+     */
+    synchronized void draw() {
+        if (!fresh) {
+            return;
+        }
+        fresh = false;
+        readyFrameShown = true;
+        if (image == null || (int) image.getWidth() != readyWidth || (int) image.getHeight() != readyHeight) {
+            image = imageOfSize(readyWidth, readyHeight);
+            imageView.setImage(image);
+        }
+        image.getPixelWriter().setPixels(0, 0, readyWidth, readyHeight, PixelFormat.getIntArgbPreInstance(), ready,
+                0, readyWidth);
+    }
+
+    private WritableImage imageOfSize(int width, int height) {
+        for (int i = 0; i < images.size(); i++) {
+            WritableImage candidate = images.get(i);
+            if ((int) candidate.getWidth() == width && (int) candidate.getHeight() == height) {
+                return candidate;
+            }
+        }
+        WritableImage created = new WritableImage(width, height);
+        images.add(created);
+        return created;
+    }
+
+    /**
+     * @return The number of frames images were posted for
+     */
+    synchronized long getPosted() {
+        return posted;
+    }
+
+    /**
+     * @return The number of frames none of whose images were drawn
+     */
+    synchronized long getDropped() {
+        return dropped;
+    }
+}
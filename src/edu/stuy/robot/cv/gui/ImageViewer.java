@@ -22,6 +22,14 @@ public class ImageViewer {
         return instance;
     }
 
+    /**
+     * @return Whether <code>image</code> is shown in a window of its own
+     */
+    public boolean isShowing(ImageView image) {
+        Stage imageWindow = windows.get(image);
+        return imageWindow != null && imageWindow.isShowing();
+    }
+
     public void showImage(String label, ImageView image) {
         Stage imageWindow = windows.get(image);
         if (imageWindow != null) {
@@ -29,6 +29,7 @@ public class IntegerSV extends Variable implements NumberVariable {
     public void set(int n) {
         assert MIN <= n && n <= MAX;
         val = n;
+        publish(n);
     }
 
     @Override
@@ -40,4 +41,9 @@ public class IntegerSV extends Variable implements NumberVariable {
         set(DEFAULT);
     }
 
+    @Override
+    double toDouble() {
+        return val;
+    }
+
 }
@@ -1,26 +1,28 @@
 package edu.stuy.robot.cv.gui;
 
-import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.videoio.Videoio;
 
 import edu.stuy.robot.cv.StuyVision;
 import edu.stuy.robot.cv.capture.CaptureSource;
 import edu.stuy.robot.cv.capture.DeviceCaptureSource;
-import edu.stuy.robot.cv.util.DebugPrinter;
+import edu.stuy.robot.cv.capture.ReplayCaptureSource;
+import edu.stuy.robot.cv.capture.VideoCaptureSource;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.SplitPane;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseButton;
 import javafx.scene.layout.VBox;
@@ -31,7 +33,26 @@ public class Main extends Application {
     private TabPane root;
     private Scene scene;
     private HashMap<Integer, ControlsController> tabs = new HashMap<Integer, ControlsController>();
-    private HashMap<String, ImageFrame> images = new HashMap<String, ImageFrame>();
+    private HashMap<Integer, Tab> moduleTabs = new HashMap<Integer, Tab>();
+    // Added to by the vision thread, and drawn from by the FX thread
+    private ConcurrentHashMap<String, ImageFrame> images = new ConcurrentHashMap<String, ImageFrame>();
+
+    // Images in tabs that are not selected, and not open in a window of their
+    // own, are not copied at all
+    final BooleanVariable skipHiddenImages = new BooleanVariable(true, "Skip hidden images");
+
+    private Stage stage;
+    private List<VisionModule> modules;
+    private ModuleRunner runner;
+    private FramePacer pacer;
+    private Thread visionThread;
+
+    private static final String TITLE = "Java Vision GUI";
+    // How often to refresh the frame rate in the title and the dropped image
+    // counts under each image
+    private static final long REFRESH_NANOS = 500000000L;
+    // Longest to wait for the vision thread to finish its frame on quitting
+    private static final long QUIT_TIMEOUT_MS = 1000;
 
     @Override
     public void start(Stage primaryStage) {
@@ -40,45 +61,30 @@ public class Main extends Application {
             root = loader.load();
             scene = new Scene(root);
             scene.getStylesheets().add(getClass().getResource("css/main.css").toString());
-            // Initialize ModuleRunner with VisionModuleSuite
-            VisionModule module = new StuyVision();
-            {
+            List<String> args = getParameters().getRaw();
+            modules = createModules(args);
+            for (int i = 0; i < modules.size(); i++) {
+                VisionModule module = modules.get(i);
                 FXMLLoader tabLoader = new FXMLLoader(getClass().getResource("fxml/module_main.fxml"));
                 final SplitPane moduleContainer = tabLoader.load();
                 ControlsController controlsController = tabLoader.getController();
                 controlsController.setup(module);
                 tabs.put(module.hashCode(), controlsController);
-                root.getTabs().add(new Tab(module.getName(), moduleContainer));
-            }
-            Main self = this;
-            DeviceCaptureSource cs = new DeviceCaptureSource(0);
-            {
-                Thread t = new Thread(new Runnable() {
-                    private Mat rawFrame;
-                    private Mat resizedFrame;
-                    @Override
-                    public void run() {
-                        rawFrame = new Mat();
-                        resizedFrame = new Mat();
-                        for (;;) {
-                            try {
-                                long start = System.currentTimeMillis();
-                                Mat frame = cs.readSized(rawFrame, resizedFrame);
-                                module.run(self, frame);
-                                long duration = System.currentTimeMillis() - start;
-                                DebugPrinter.println(module.getName() + ": " + duration + " ms");
-                                Thread.sleep(1000 / 30);
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }
-                    }
-                }, module.getName() + " Thread");
-                t.setDaemon(true);
-                t.start();
+                Tab tab = new Tab(tabName(i), moduleContainer);
+                moduleTabs.put(module.hashCode(), tab);
+                root.getTabs().add(tab);
             }
+            // Shared by every module, so shown once, after their tabs
+            root.getTabs().add(new Tab("GUI", guiSettings()));
+            runner = new ModuleRunner(this, modules);
+            pacer = new FramePacer(createCaptureSource(args), runner);
+            visionThread = new Thread(pacer, "Vision Thread");
+            visionThread.setDaemon(true);
+            visionThread.start();
+            stage = primaryStage;
+            drawImagesEveryPulse();
             primaryStage.setOnCloseRequest((event) -> quit());
-            primaryStage.setTitle("Java Vision GUI");
+            primaryStage.setTitle(TITLE);
             primaryStage.setScene(scene);
             primaryStage.show();
         }
@@ -87,27 +93,158 @@ public class Main extends Application {
         }
     }
 
+    /**
+     * @return The controls for the settings of the gui itself, rather than
+     * of any one module
+     */
+    private VBox guiSettings() {
+        CheckBox skipHidden = new CheckBox(skipHiddenImages.LABEL);
+        skipHidden.setSelected(skipHiddenImages.getValue());
+        skipHidden.getStyleClass().add("boolean-label");
+        skipHidden.selectedProperty().addListener(
+                (observable, oldValue, newValue) -> skipHiddenImages.setValue(newValue.booleanValue()));
+        VBox settings = new VBox(skipHidden);
+        settings.setAlignment(Pos.CENTER);
+        return settings;
+    }
+
+    /**
+     * @param args
+     * The command line arguments, which include <code>--compare</code> to run
+     * a second, independently tuned pipeline alongside the first
+     * @return The modules to run on every frame, each in a tab of its own
+     */
+    protected List<VisionModule> createModules(List<String> args) {
+        List<VisionModule> modules = new ArrayList<VisionModule>();
+        modules.add(new StuyVision(false));
+        if (args.contains("--compare")) {
+            modules.add(new StuyVision(false));
+        }
+        return modules;
+    }
+
+    /**
+     * @return The name of the <code>index</code>th module, numbered if
+     * another module has the same name
+     */
+    private String tabName(int index) {
+        String name = modules.get(index).getName();
+        for (int i = 0; i < modules.size(); i++) {
+            if (i != index && modules.get(i).getName().equals(name)) {
+                return name + " " + (index + 1);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * @param args
+     * Empty to use the first camera, <code>--replay path</code> to play back
+     * a recording made on the robot at the rate it was recorded, or
+     * <code>--replay-fast path</code> or <code>--video path</code> to process
+     * a recording or a video file as fast as possible
+     */
+    private static CaptureSource createCaptureSource(List<String> args) {
+        if (optionValue(args, "--replay") != null) {
+            return new ReplayCaptureSource(optionValue(args, "--replay"), true);
+        }
+        if (optionValue(args, "--replay-fast") != null) {
+            return new ReplayCaptureSource(optionValue(args, "--replay-fast"), false);
+        }
+        if (optionValue(args, "--video") != null) {
+            return new VideoCaptureSource(optionValue(args, "--video"));
+        }
+        return new DeviceCaptureSource(0);
+    }
+
+    /**
+     * @return The argument after <code>option</code>, or <code>null</code> if
+     * there is none
+     */
+    private static String optionValue(List<String> args, String option) {
+        int i = args.indexOf(option);
+        return i >= 0 && i + 1 < args.size() ? args.get(i + 1) : null;
+    }
+
+    /**
+     * Draw the newest image posted to each slot once per pulse, however many
+     * were posted since the last, and keep track of which are visible
+     */
+    private void drawImagesEveryPulse() {
+        new AnimationTimer() {
+            private long lastRefresh;
+
+            @Override
+            public void handle(long now) {
+                boolean refresh = now - lastRefresh >= REFRESH_NANOS;
+                if (refresh) {
+                    lastRefresh = now;
+                    showFrameRate();
+                    showModuleTimes();
+                }
+                for (ImageFrame frame : images.values()) {
+                    frame.visible = frame.tab.isSelected() || ImageViewer.getInstance().isShowing(frame.imageView);
+                    frame.draw();
+                    long dropped = frame.getDropped();
+                    if (refresh && dropped > 0) {
+                        frame.label.setText(frame.name + " (dropped " + dropped + " of " + frame.getPosted() + ")");
+                    }
+                }
+            }
+        }.start();
+    }
+
+    private void showFrameRate() {
+        if (pacer.getFps() == 0) {
+            return;
+        }
+        stage.setTitle(String.format("%s - %.1f fps (capture %.1f ms, processing %.1f ms)", TITLE, pacer.getFps(),
+                pacer.getCaptureMs(), pacer.getProcessMs()));
+    }
+
+    private void showModuleTimes() {
+        for (int i = 0; i < modules.size(); i++) {
+            double ms = runner.getProcessMs(i);
+            if (ms > 0) {
+                moduleTabs.get(modules.get(i).hashCode()).setText(String.format("%s (%.1f ms)", tabName(i), ms));
+            }
+        }
+    }
+
     private void quit() {
+        // Let the frame being processed finish before the modules are closed
+        visionThread.interrupt();
+        try {
+            visionThread.join(QUIT_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (VisionModule module : modules) {
+            module.close();
+        }
         Platform.exit();
         System.exit(0);
     }
 
-    public synchronized void postImage(Mat m, String label, VisionModule requester) {
+    /**
+     * Called by each module from the thread running it. Every image is only
+     * posted by one module, so modules running at the same time never touch
+     * the same frame.
+     */
+    public void postImage(Mat m, String label, VisionModule requester) {
         String key = requester.hashCode() + label;
-        // Convert raw image to PNG
-        MatOfByte buffer = new MatOfByte();
-        Imgcodecs.imencode(".png", m, buffer);
-        Image image = new Image(new ByteArrayInputStream(buffer.toArray()));
         // Check if an ImageFrame already exists
         ImageFrame existingFrame = images.get(key);
         if (existingFrame == null) {
             VBox container = new VBox();
             container.setAlignment(Pos.CENTER);
-            ImageView imageView = new ImageView(image);
+            ImageView imageView = new ImageView();
             Text text = new Text(label);
             text.getStyleClass().add("image-label");
             container.getChildren().addAll(imageView, text);
-            images.put(key, new ImageFrame(imageView, text));
+            ImageFrame frame = new ImageFrame(imageView, text, label, moduleTabs.get(requester.hashCode()));
+            frame.update(m, runner.getFrameNumber());
+            images.put(key, frame);
             Platform.runLater(() -> {
                 tabs.get(requester.hashCode()).flowPane.getChildren().add(container);
             });
@@ -119,27 +256,13 @@ public class Main extends Application {
                 }
             });
         }
-        else {
-            // Update the existing ImageFrame
-            Platform.runLater(() -> {
-                existingFrame.imageView.setImage(image);
-                existingFrame.imageView.toFront();
-                existingFrame.label.toFront();
-            });
+        else if (existingFrame.visible || !skipHiddenImages.getValue()) {
+            // Leave the new image in the frame's mailbox, for the next pulse
+            existingFrame.update(m, runner.getFrameNumber());
         }
     }
 
     public static void main(String[] args) {
         launch(args);
     }
-
-    private class ImageFrame {
-        private ImageView imageView;
-        private Text label;
-
-        public ImageFrame(ImageView imageView, Text label) {
-            this.imageView = imageView;
-            this.label = label;
-        }
-    }
 }
@@ -0,0 +1,119 @@
+package edu.stuy.robot.cv.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.opencv.core.Mat;
+
+/**
+ * Runs every module on each frame, e.g. to compare a candidate pipeline with
+ * the one used on the robot on the same frames. The frame is captured once
+ * and shared: modules must only read it, as they all do by drawing on copies.
+ *
+ * With more than one module, they run at the same time on a fixed pool of
+ * threads, no larger than the number of modules or of processors, and the
+ * frame is only handed back once all of them are done with it. The time each
+ * module takes is measured and smoothed, for the gui to show side by side.
+ */
+class ModuleRunner implements Consumer<Mat> {
+
+    // Weight of each new measurement in the smoothed times
+    private static final double SMOOTHING = 0.1;
+
+    private final Main app;
+    private final List<VisionModule> modules;
+    private final ExecutorService executor;
+    private final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+    // Set before the tasks are started, and only read by them
+    private Mat frame;
+    // Counts the frames run so far, so images posted for the same frame can
+    // be told apart from those of the next. Written by the pacer's thread.
+    private volatile long frameNumber;
+
+    // Smoothed milliseconds taken by each module. Each is written by the
+    // thread running its module, and read by the FX thread, which only shows
+    // it, so may see it a frame late.
+    private final double[] processMs;
+
+    ModuleRunner(Main app, List<VisionModule> modules) {
+        this.app = app;
+        this.modules = modules;
+        processMs = new double[modules.size()];
+        for (int i = 0; i < modules.size(); i++) {
+            final int index = i;
+            tasks.add(() -> {
+                runModule(index);
+                return null;
+            });
+        }
+        if (modules.size() > 1) {
+            int threads = Math.min(modules.size(), Runtime.getRuntime().availableProcessors());
+            executor = Executors.newFixedThreadPool(threads, (runnable) -> {
+                Thread t = new Thread(runnable, "Vision Module Thread");
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            // Nothing to run alongside the one module, so it runs on the
+            // caller's thread
+            executor = null;
+        }
+    }
+
+    /**
+     * Run every module on <code>frame</code>, returning once all are done
+     */
+    @Override
+    public void accept(Mat frame) {
+        this.frame = frame;
+        frameNumber++;
+        if (executor == null) {
+            runModule(0);
+            return;
+        }
+        try {
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    // One module failing should not stop the others
+                    e.getCause().printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runModule(int index) {
+        long start = System.nanoTime();
+        modules.get(index).run(app, frame);
+        double ms = (System.nanoTime() - start) / 1e6;
+        double average = processMs[index];
+        // Start from the first sample rather than from zero
+        processMs[index] = average == 0 ? ms : average + SMOOTHING * (ms - average);
+    }
+
+    /**
+     * @return The number of the frame being run, for the modules to post
+     * their images with
+     */
+    long getFrameNumber() {
+        return frameNumber;
+    }
+
+    /**
+     * @return The smoothed time the <code>index</code>th module takes per
+     * frame, in milliseconds
+     */
+    double getProcessMs(int index) {
+        return processMs[index];
+    }
+}
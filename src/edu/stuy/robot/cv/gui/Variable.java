@@ -4,10 +4,41 @@ public abstract class Variable {
 
     public final String LABEL;
 
+    // The set the variable belongs to, if any, and its place in it
+    private VariableSet set;
+    private int index;
+
     public Variable(String label) {
         this.LABEL = label;
     }
 
     public abstract void restoreDefault();
 
+    /**
+     * @return The value as a double, which holds ints and booleans exactly
+     */
+    abstract double toDouble();
+
+    void bind(VariableSet set, int index) {
+        if (this.set != null && this.set != set) {
+            throw new IllegalStateException(LABEL + " already belongs to another set");
+        }
+        this.set = set;
+        this.index = index;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Publish a new value to the variable's set, to be seen by the next
+     * snapshot taken of it
+     */
+    void publish(double value) {
+        if (set != null) {
+            set.publish(index, value);
+        }
+    }
+
 }
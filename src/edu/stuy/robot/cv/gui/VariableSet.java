@@ -0,0 +1,71 @@
+package edu.stuy.robot.cv.gui;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The variables of a module, e.g. those tuned from the gui, published as
+ * snapshots. Setting a variable publishes a new snapshot with the new value in
+ * one atomic step, and the module takes the current snapshot once at the
+ * start of each frame, so that the frame sees the values of a single moment.
+ * As a snapshot never changes, the JIT is also free to hoist its reads out of
+ * loops, which it cannot do with fields another thread may write.
+ */
+public class VariableSet {
+
+    private final AtomicReference<VariableSnapshot> current;
+
+    /**
+     * Gather the public <code>Variable</code> fields of <code>owner</code>,
+     * which must already be set, as <code>ControlsController</code> does
+     */
+    public VariableSet(Object owner) {
+        ArrayList<Variable> variables = new ArrayList<Variable>();
+        for (Field f : owner.getClass().getFields()) {
+            if (!Variable.class.isAssignableFrom(f.getType())) {
+                continue;
+            }
+            try {
+                Variable v = (Variable) f.get(owner);
+                if (v != null) {
+                    variables.add(v);
+                }
+            } catch (IllegalArgumentException | IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+        double[] values = new double[variables.size()];
+        for (int i = 0; i < values.length; i++) {
+            Variable v = variables.get(i);
+            v.bind(this, i);
+            values[i] = v.toDouble();
+        }
+        current = new AtomicReference<VariableSnapshot>(new VariableSnapshot(0, values));
+    }
+
+    /**
+     * @return The values of all the variables as of now
+     */
+    public VariableSnapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Replace the current snapshot with one in which the <code>index</code>th
+     * variable is <code>value</code>, retrying if another writer got there
+     * first. Does nothing if the value is unchanged, e.g. when a slider moves
+     * within one integer, so the version only changes with the values.
+     */
+    void publish(int index, double value) {
+        VariableSnapshot previous;
+        VariableSnapshot next;
+        do {
+            previous = current.get();
+            if (previous.get(index) == value) {
+                return;
+            }
+            next = previous.with(index, value);
+        } while (!current.compareAndSet(previous, next));
+    }
+}
@@ -0,0 +1,50 @@
+package edu.stuy.robot.cv.gui;
+
+/**
+ * The values of every variable in a <code>VariableSet</code> at one moment.
+ * Never changes once taken, so a frame processed with one sees the same
+ * value of each variable however many times it reads it, and never a mix of
+ * old and new values while they are being changed.
+ */
+public final class VariableSnapshot {
+
+    /**
+     * Increases by one with each change to the set, so that anything derived
+     * from the values only has to be rebuilt when it differs
+     */
+    public final long version;
+    private final double[] values;
+
+    VariableSnapshot(long version, double[] values) {
+        this.version = version;
+        this.values = values;
+    }
+
+    /**
+     * @return A copy of this snapshot with the <code>index</code>th value
+     * changed, and the next version
+     */
+    VariableSnapshot with(int index, double value) {
+        double[] changed = values.clone();
+        changed[index] = value;
+        return new VariableSnapshot(version + 1, changed);
+    }
+
+    double get(int index) {
+        return values[index];
+    }
+
+    // The variables passed must belong to the set the snapshot was taken of
+
+    public int get(IntegerSV v) {
+        return (int) values[v.getIndex()];
+    }
+
+    public double get(DoubleSV v) {
+        return values[v.getIndex()];
+    }
+
+    public boolean get(BooleanVariable v) {
+        return values[v.getIndex()] != 0;
+    }
+}
@@ -2,6 +2,8 @@ package edu.stuy.robot.cv.gui;
 
 import org.opencv.core.Mat;
 
+import edu.stuy.robot.cv.util.StageTimers;
+
 public abstract class VisionModule {
 
     public abstract void run(Main app, Mat frame);
@@ -9,4 +11,19 @@ public abstract class VisionModule {
     public String getName() {
         return getClass().getSimpleName();
     }
+
+    /**
+     * @return The module's stage timers, for the GUI to show, or
+     * <code>null</code> if it has none
+     */
+    public StageTimers getStageTimers() {
+        return null;
+    }
+
+    /**
+     * Free anything the module keeps between frames, such as threads. Called
+     * once no more frames will be run.
+     */
+    public void close() {
+    }
 }
@@ -0,0 +1,25 @@
+package edu.stuy.robot.cv.util;
+
+/**
+ * Where vision gets the robot's motion from, e.g. to tell when the robot
+ * has stayed still, and to record alongside the frames it was seen with.
+ */
+public interface OdometrySource {
+
+    /**
+     * @param time
+     * A <code>VisionClock</code> time, in seconds
+     * @return The robot's heading, in degrees, at <code>time</code>
+     */
+    double getHeadingAt(double time);
+
+    /**
+     * @return The distance, in inches, travelled by the left side
+     */
+    double getLeftEncoder();
+
+    /**
+     * @return The distance, in inches, travelled by the right side
+     */
+    double getRightEncoder();
+}
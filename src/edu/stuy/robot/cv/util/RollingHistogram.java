@@ -0,0 +1,99 @@
+package edu.stuy.robot.cv.util;
+
+/**
+ * A histogram of the last <code>window</code> durations recorded, in
+ * logarithmic buckets eight to an octave (each about 9% wide) from 1us to
+ * about 4s.
+ *
+ * Recording is a few integer operations and array writes, with no
+ * allocation; all the work of finding percentiles is done by readers. There
+ * must be only one writer. Readers on other threads may see a sample or two
+ * half-recorded, which is fine for monitoring.
+ */
+public class RollingHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MIN_OCTAVE = 10; // 2^10ns, about 1us
+    private static final int OCTAVES = 22; // up to 2^32ns, about 4s
+    private static final int BUCKETS = OCTAVES * SUB_BUCKETS;
+
+    private final byte[] window; // Bucket of each recent sample, oldest overwritten first
+    private final int[] counts = new int[BUCKETS];
+    private int next;
+    private volatile int size;
+    private volatile long last;
+
+    public RollingHistogram(int window) {
+        this.window = new byte[window];
+    }
+
+    public void record(long nanos) {
+        int bucket = bucketOf(nanos);
+        if (size == window.length) {
+            counts[window[next] & 0xff]--;
+        } else {
+            size++;
+        }
+        window[next] = (byte) bucket;
+        counts[bucket]++;
+        next = (next + 1) % window.length;
+        last = nanos;
+    }
+
+    /**
+     * @return The most recently recorded duration, in milliseconds
+     */
+    public double lastMs() {
+        return last / 1e6;
+    }
+
+    /**
+     * @return The number of samples in the window
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param percentile
+     * Between 0 and 100
+     * @return The duration, in milliseconds, below which about
+     * <code>percentile</code>% of the samples in the window fell, or
+     * <code>NaN</code> if there are none
+     */
+    public double percentileMs(double percentile) {
+        int n = size;
+        if (n == 0) {
+            return Double.NaN;
+        }
+        int rank = Math.max(1, (int) Math.ceil(percentile / 100 * n));
+        int seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return upperBoundNanos(bucket) / 1e6;
+            }
+        }
+        return upperBoundNanos(BUCKETS - 1) / 1e6;
+    }
+
+    private static int bucketOf(long nanos) {
+        if (nanos < (1L << MIN_OCTAVE)) {
+            return 0;
+        }
+        int octave = 63 - Long.numberOfLeadingZeros(nanos);
+        if (octave >= MIN_OCTAVE + OCTAVES) {
+            return BUCKETS - 1;
+        }
+        // The bits just below the leading one pick the sub-bucket
+        int sub = (int) (nanos >>> (octave - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (octave - MIN_OCTAVE) * SUB_BUCKETS + sub;
+    }
+
+    private static double upperBoundNanos(int bucket) {
+        int octave = bucket / SUB_BUCKETS + MIN_OCTAVE;
+        int sub = bucket % SUB_BUCKETS;
+        return (double) (1L << octave) * (SUB_BUCKETS + sub + 1) / SUB_BUCKETS;
+    }
+}
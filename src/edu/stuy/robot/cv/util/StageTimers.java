@@ -0,0 +1,114 @@
+package edu.stuy.robot.cv.util;
+
+/**
+ * Always-on timers for the stages of the vision pipeline. During a frame,
+ * the time spent in each stage is added up with <code>add</code> (a stage may
+ * run several times, e.g. once per candidate region); <code>endFrame</code>
+ * then records each stage's total for the frame in a
+ * <code>RollingHistogram</code>.
+ *
+ * Only one thread may time frames, but any thread may read the histograms.
+ */
+public class StageTimers {
+
+    // VisionLog records the stages by position, so new ones go at the end
+    public enum Stage {
+        RESIZE("Resize"),
+        CONVERT("cvtColor"),
+        THRESHOLD("inRange"),
+        MORPHOLOGY("Erode/dilate"),
+        // findContours, or the blob extractor's labeling
+        CONTOURS("Contours"),
+        GOAL_FIT("minAreaRect"),
+        TOTAL("Total"),
+        // cvtColor, inRange and erode/dilate, when run on stripes in parallel
+        PARALLEL_FILTER("Parallel filter"),
+        // cvtColor, inRange and erode/dilate, when done in Java
+        JAVA_FILTER("Java filter");
+
+        public final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    // About eight seconds of frames at 30fps
+    private static final int WINDOW = 256;
+
+    private final RollingHistogram[] histograms = new RollingHistogram[STAGES.length];
+    private final long[] frameNanos = new long[STAGES.length];
+    private final boolean[] ran = new boolean[STAGES.length];
+    private final float[] lastFrameMs = new float[STAGES.length];
+
+    public StageTimers() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new RollingHistogram(WINDOW);
+        }
+    }
+
+    /**
+     * Add time spent in <code>stage</code> during the current frame
+     *
+     * @param startNanos
+     * The <code>System.nanoTime()</code> at which the stage started
+     * @return The current <code>System.nanoTime()</code>, to start timing the
+     * next stage with
+     */
+    public long add(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        addNanos(stage, now - startNanos);
+        return now;
+    }
+
+    public void addNanos(Stage stage, long nanos) {
+        frameNanos[stage.ordinal()] += nanos;
+        ran[stage.ordinal()] = true;
+    }
+
+    /**
+     * Record the totals of each stage that ran during the frame, and start a
+     * new frame
+     */
+    public void endFrame() {
+        for (int i = 0; i < STAGES.length; i++) {
+            if (ran[i]) {
+                histograms[i].record(frameNanos[i]);
+                lastFrameMs[i] = (float) (frameNanos[i] / 1e6);
+            } else {
+                lastFrameMs[i] = 0;
+            }
+            frameNanos[i] = 0;
+            ran[i] = false;
+        }
+    }
+
+    public RollingHistogram get(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * @return How long <code>stage</code> took in the last frame ended, in
+     * milliseconds, or zero if it did not run. Only for the timing thread.
+     */
+    public float lastFrameMs(Stage stage) {
+        return lastFrameMs[stage.ordinal()];
+    }
+
+    /**
+     * @return A table of the median, 90th and 99th percentiles of each stage
+     */
+    public String summary() {
+        StringBuilder s = new StringBuilder("Stage (ms)       p50     p90     p99\n");
+        for (Stage stage : STAGES) {
+            RollingHistogram h = get(stage);
+            if (h.size() == 0) {
+                continue;
+            }
+            s.append(String.format("%-13s %7.2f %7.2f %7.2f\n", stage.label, h.percentileMs(50),
+                    h.percentileMs(90), h.percentileMs(99)));
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,26 @@
+package edu.stuy.robot.cv.util;
+
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Timestamps for vision data, in seconds. On the robot these come from the
+ * FPGA, the same clock the rest of the robot code (and the drivetrain's
+ * heading history) uses. Off the robot, where there is no FPGA, they come
+ * from <code>System.nanoTime()</code> instead.
+ */
+public class VisionClock {
+
+    private static boolean onRobot = true;
+
+    public static double now() {
+        if (onRobot) {
+            try {
+                return Timer.getFPGATimestamp();
+            } catch (Throwable e) {
+                // When testing off-robot the above will obviously fail
+                onRobot = false;
+            }
+        }
+        return System.nanoTime() / 1e9;
+    }
+}
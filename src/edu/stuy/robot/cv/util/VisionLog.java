@@ -0,0 +1,213 @@
+package edu.stuy.robot.cv.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A log of vision readings in fixed-size binary records. Records are put in a
+ * preallocated ring by the processing thread, which never blocks or
+ * allocates, and written to disk in batches by a background thread.
+ *
+ * Files are rotated once they reach <code>maxFileBytes</code>:
+ * <code>base.bin</code> is the current file, <code>base.1.bin</code> the one
+ * before it, and so on up to <code>base.(maxFiles - 1).bin</code>, so the log
+ * never takes more than about <code>maxFileBytes * maxFiles</code> of flash.
+ *
+ * Use <code>VisionLogDecoder</code> to read the files back.
+ */
+public class VisionLog implements Runnable {
+
+    static final int MAGIC = 0x5356_4C47; // "SVLG"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 12; // MAGIC, VERSION, RECORD_SIZE
+
+    // Record layout, as offsets into the record
+    static final int WALL_TIME = 0; // long, System.currentTimeMillis()
+    static final int CAPTURE_TIME = 8; // double, VisionClock seconds
+    static final int SEQUENCE = 16; // long
+    static final int PROCESSING_MS = 24; // double
+    static final int FLAGS = 32; // int, FLAG_GOAL if there is a reading
+    static final int READING = 36; // three doubles
+    // A float per StageTimers.Stage, in the order they are declared, zero if
+    // it did not run. The record grows with the number of stages, so a log
+    // made with a different number is rejected by the decoder; reordering
+    // the stages needs a new VERSION.
+    static final int STAGE_MS = 60;
+
+    private static final StageTimers.Stage[] STAGES = StageTimers.Stage.values();
+
+    static final int RECORD_SIZE = STAGE_MS + 4 * STAGES.length;
+
+    static final int FLAG_GOAL = 1;
+
+    // How often the writer thread wakes up to write what has been recorded
+    private static final long FLUSH_INTERVAL_MS = 250;
+
+    private final String basePath;
+    private final long maxFileBytes;
+    private final int maxFiles;
+
+    private final int capacity;
+    private final ByteBuffer ring;
+    // Records ever recorded and written; their volatile writes publish the
+    // record bytes between the two threads
+    private volatile long recorded;
+    private volatile long written;
+    private volatile long dropped;
+
+    private FileChannel channel;
+    private long fileBytes;
+    private Thread thread;
+
+    /**
+     * @param basePath
+     * Path of the current log file, without the <code>.bin</code>
+     * @param capacity
+     * Number of records the ring holds. Records made while it is full are
+     * dropped.
+     * @param maxFileBytes
+     * Size at which to start a new file
+     * @param maxFiles
+     * Number of files to keep, including the current one
+     */
+    public VisionLog(String basePath, int capacity, long maxFileBytes, int maxFiles) {
+        this.basePath = basePath;
+        this.capacity = capacity;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        ring = ByteBuffer.allocate(capacity * RECORD_SIZE);
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this, "Vision Log Writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Add a record to the log. Only call from one thread at a time.
+     *
+     * @param reading
+     * The output of <code>hsvThresholding</code>, or <code>null</code>
+     * @param timers
+     * The timers of the frame's stages, just after its
+     * <code>endFrame</code>
+     */
+    public void record(double captureTime, long sequence, double[] reading, double processingMs,
+            StageTimers timers) {
+        long n = recorded;
+        if (n - written >= capacity) {
+            // The writer has fallen behind; losing a record is better than
+            // holding up vision
+            dropped++;
+            return;
+        }
+        int at = (int) (n % capacity) * RECORD_SIZE;
+        ring.putLong(at + WALL_TIME, System.currentTimeMillis());
+        ring.putDouble(at + CAPTURE_TIME, captureTime);
+        ring.putLong(at + SEQUENCE, sequence);
+        ring.putDouble(at + PROCESSING_MS, processingMs);
+        ring.putInt(at + FLAGS, reading == null ? 0 : FLAG_GOAL);
+        for (int i = 0; i < 3; i++) {
+            ring.putDouble(at + READING + 8 * i, reading == null ? 0 : reading[i]);
+        }
+        for (int i = 0; i < STAGES.length; i++) {
+            ring.putFloat(at + STAGE_MS + 4 * i, timers.lastFrameMs(STAGES[i]));
+        }
+        recorded = n + 1;
+    }
+
+    /**
+     * @return The number of records dropped because the ring was full
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public void run() {
+        // The writer's own view of the ring, so its position and limit do not
+        // interfere with the recording thread
+        ByteBuffer view = ring.duplicate();
+        while (true) {
+            try {
+                Thread.sleep(FLUSH_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                writeBatch(view);
+            } catch (IOException e) {
+                System.out.println("Error writing vision log: " + e);
+                // Skip what could not be written, and start a fresh file
+                written = recorded;
+                closeFile();
+            }
+        }
+    }
+
+    private void writeBatch(ByteBuffer view) throws IOException {
+        long end = recorded;
+        long start = written;
+        if (start == end) {
+            return;
+        }
+        if (channel == null || fileBytes >= maxFileBytes) {
+            rotate();
+        }
+        while (start < end) {
+            // Write up to the end of the ring, then wrap around
+            int from = (int) (start % capacity);
+            int count = (int) Math.min(end - start, capacity - from);
+            view.limit((from + count) * RECORD_SIZE);
+            view.position(from * RECORD_SIZE);
+            while (view.hasRemaining()) {
+                channel.write(view);
+            }
+            start += count;
+        }
+        fileBytes += (end - written) * RECORD_SIZE;
+        written = end;
+    }
+
+    private void rotate() throws IOException {
+        closeFile();
+        File current = new File(basePath + ".bin");
+        if (current.exists()) {
+            new File(basePath + "." + (maxFiles - 1) + ".bin").delete();
+            for (int i = maxFiles - 2; i >= 1; i--) {
+                new File(basePath + "." + i + ".bin").renameTo(new File(basePath + "." + (i + 1) + ".bin"));
+            }
+            if (maxFiles > 1) {
+                current.renameTo(new File(basePath + ".1.bin"));
+            } else {
+                current.delete();
+            }
+        }
+        channel = new RandomAccessFile(current, "rw").getChannel();
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        fileBytes = HEADER_SIZE;
+    }
+
+    private void closeFile() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+            }
+            channel = null;
+        }
+    }
+}
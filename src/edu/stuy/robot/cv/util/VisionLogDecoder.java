@@ -0,0 +1,85 @@
+package edu.stuy.robot.cv.util;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import edu.stuy.robot.cv.StuyVision;
+
+/**
+ * Prints the records of <code>VisionLog</code> files as
+ * <code>StuyVision.Report</code>s.
+ *
+ * Usage: <code>VisionLogDecoder [-v] file...</code>, where <code>-v</code>
+ * also prints each record's capture time, sequence number, processing time
+ * and the time taken by each stage. Pass the oldest file first to read them
+ * in order.
+ */
+public class VisionLogDecoder {
+
+    public static void main(String[] args) {
+        boolean verbose = false;
+        for (String arg : args) {
+            if (arg.equals("-v")) {
+                verbose = true;
+                continue;
+            }
+            try {
+                decode(arg, verbose);
+            } catch (IOException e) {
+                System.err.println("Could not read " + arg + ": " + e);
+            }
+        }
+    }
+
+    private static void decode(String path, boolean verbose) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(path));
+        try {
+            if (in.readInt() != VisionLog.MAGIC) {
+                throw new IOException("not a vision log");
+            }
+            int version = in.readInt();
+            int recordSize = in.readInt();
+            if (version != VisionLog.VERSION || recordSize != VisionLog.RECORD_SIZE) {
+                throw new IOException("unsupported log version " + version + " with " + recordSize
+                        + "-byte records");
+            }
+            byte[] bytes = new byte[recordSize];
+            ByteBuffer record = ByteBuffer.wrap(bytes);
+            while (true) {
+                try {
+                    in.readFully(bytes);
+                } catch (EOFException e) {
+                    // A partly written last record is ignored
+                    return;
+                }
+                double[] reading = null;
+                if ((record.getInt(VisionLog.FLAGS) & VisionLog.FLAG_GOAL) != 0) {
+                    reading = new double[3];
+                    for (int i = 0; i < 3; i++) {
+                        reading[i] = record.getDouble(VisionLog.READING + 8 * i);
+                    }
+                }
+                if (verbose) {
+                    System.out.println("| Frame " + record.getLong(VisionLog.SEQUENCE) + ", captured at "
+                            + record.getDouble(VisionLog.CAPTURE_TIME) + "s, processed in "
+                            + String.format("%.1f", record.getDouble(VisionLog.PROCESSING_MS)) + "ms");
+                    StringBuilder stages = new StringBuilder("|  Stages:");
+                    StageTimers.Stage[] values = StageTimers.Stage.values();
+                    for (int i = 0; i < values.length; i++) {
+                        float ms = record.getFloat(VisionLog.STAGE_MS + 4 * i);
+                        if (ms > 0) {
+                            stages.append(String.format(" %s %.2fms", values[i].label, ms));
+                        }
+                    }
+                    System.out.println(stages);
+                }
+                System.out.println(new StuyVision.Report(reading, record.getLong(VisionLog.WALL_TIME)));
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
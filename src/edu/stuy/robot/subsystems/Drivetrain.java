@@ -13,6 +13,8 @@ import static edu.stuy.robot.RobotMap.RIGHT_ENCODER_CHANNEL_A;
 import static edu.stuy.robot.RobotMap.RIGHT_ENCODER_CHANNEL_B;
 
 import edu.stuy.robot.commands.DrivetrainTankDriveCommand;
+import edu.stuy.robot.cv.util.OdometrySource;
+import edu.stuy.util.HeadingHistory;
 import edu.stuy.util.TankDriveOutput;
 import edu.wpi.first.wpilibj.ADXRS450_Gyro;
 import edu.wpi.first.wpilibj.CANTalon;
@@ -21,13 +23,14 @@ import edu.wpi.first.wpilibj.PIDController;
 import edu.wpi.first.wpilibj.PIDSourceType;
 import edu.wpi.first.wpilibj.RobotDrive;
 import edu.wpi.first.wpilibj.Solenoid;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.command.Subsystem;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 /**
  *
  */
-public class Drivetrain extends Subsystem {
+public class Drivetrain extends Subsystem implements OdometrySource {
     private Encoder rightEncoder;
     private Encoder leftEncoder;
     private CANTalon leftFrontMotor;
@@ -48,6 +51,14 @@ public class Drivetrain extends Subsystem {
 
     private int gearCounter = 0;
 
+    // Samples of getHeading(), recorded every robot loop (~20ms), so about
+    // two seconds' worth
+    private static final int HEADING_HISTORY_LENGTH = 100;
+    private HeadingHistory headingHistory = new HeadingHistory(HEADING_HISTORY_LENGTH);
+    // Sum of the gyro angles discarded by resetGyro(), which keeps
+    // getHeading() continuous across resets
+    private double headingOffset;
+
     // Put methods for controlling this subsystem
     // here. Call these from Commands.
     public Drivetrain() {
@@ -206,6 +217,39 @@ public class Drivetrain extends Subsystem {
     }
 
     public void resetGyro() {
+        headingOffset += gyro.getAngle();
         gyro.reset();
     }
+
+    /**
+     * @return The angle the robot has turned since it started up, in degrees.
+     * Unlike <code>getGyroAngle</code>, this is not affected by
+     * <code>resetGyro</code>.
+     */
+    public double getHeading() {
+        return headingOffset + gyro.getAngle();
+    }
+
+    /**
+     * Add the current heading to the heading history. Call once per robot
+     * loop.
+     */
+    public void recordHeading() {
+        headingHistory.record(Timer.getFPGATimestamp(), getHeading());
+    }
+
+    /**
+     * @param time
+     * An FPGA timestamp from the last couple of seconds, e.g. when a camera
+     * frame was captured
+     * @return What <code>getHeading</code> was at <code>time</code>
+     */
+    public double getHeadingAt(double time) {
+        double heading = headingHistory.headingAt(time);
+        if (Double.isNaN(heading)) {
+            // Nothing recorded yet
+            return getHeading();
+        }
+        return heading;
+    }
 }
@@ -0,0 +1,93 @@
+package edu.stuy.util;
+
+/**
+ * A fixed-size ring buffer of timestamped headings, used to look up which way
+ * the robot was facing at some moment in the recent past (e.g. when a camera
+ * frame was captured).
+ *
+ * Lock-free: there must be only one writer, but any number of threads may
+ * read while it writes. A reader that may have raced with the writer
+ * wrapping around the buffer simply retries.
+ */
+public class HeadingHistory {
+
+    private final double[] times;
+    private final double[] headings;
+    // Number of samples ever recorded; its volatile write publishes the sample
+    private volatile long count;
+
+    public HeadingHistory(int capacity) {
+        times = new double[capacity];
+        headings = new double[capacity];
+    }
+
+    /**
+     * Record a sample. Timestamps must be increasing. Only call from one
+     * thread.
+     */
+    public void record(double time, double heading) {
+        long n = count;
+        int i = (int) (n % times.length);
+        times[i] = time;
+        headings[i] = heading;
+        count = n + 1;
+    }
+
+    /**
+     * @return The heading at <code>time</code>, interpolated between the two
+     * nearest samples, or the nearest sample if <code>time</code> lies outside
+     * the recorded history. <code>Double.NaN</code> if nothing has been
+     * recorded yet.
+     */
+    public double headingAt(double time) {
+        for (;;) {
+            long n = count;
+            if (n == 0) {
+                return Double.NaN;
+            }
+            // Leave one slot of margin for a sample being written
+            long oldest = Math.max(0, n - times.length + 1);
+            long newer = n - 1;
+            double newerTime = times[index(newer)];
+            double newerHeading = headings[index(newer)];
+            double result = newerHeading;
+            if (time < newerTime) {
+                // Walk back to the first sample not after `time`
+                long older = newer - 1;
+                while (older >= oldest && times[index(older)] > time) {
+                    newer = older;
+                    older--;
+                }
+                newerTime = times[index(newer)];
+                newerHeading = headings[index(newer)];
+                if (older < oldest) {
+                    result = newerHeading;
+                } else {
+                    double olderTime = times[index(older)];
+                    double olderHeading = headings[index(older)];
+                    double span = newerTime - olderTime;
+                    result = span <= 0 ? newerHeading
+                            : olderHeading + (newerHeading - olderHeading) * (time - olderTime) / span;
+                }
+            }
+            // If the writer has wrapped around into the samples just read,
+            // they may be torn: try again
+            if (count - times.length + 1 <= oldest) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return The most recently recorded heading, or <code>Double.NaN</code>
+     * if nothing has been recorded yet
+     */
+    public double latestHeading() {
+        long n = count;
+        return n == 0 ? Double.NaN : headings[index(n - 1)];
+    }
+
+    private int index(long sample) {
+        return (int) (sample % times.length);
+    }
+}